@@ -0,0 +1,66 @@
+package run.halo.sticker.pojo.enums;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import run.halo.app.extension.Metadata;
+import run.halo.sticker.model.Sticker;
+
+/**
+ * Measures sorting stickers in memory with the {@link StickerSorter} comparators, as done for
+ * sprite sheets, exports and anything else that orders a whole group.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StickerSorterBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"SEQUENCE", "DISPLAY_NAME", "GROUP_NAME"})
+    public StickerSorter sorter;
+
+    @Param({"true", "false"})
+    public boolean ascending;
+
+    private Sticker[] stickers;
+
+    private Comparator<Sticker> comparator;
+
+    @Setup
+    public void setUp() {
+        var random = new SplittableRandom(42);
+        stickers = new Sticker[size];
+        for (int i = 0; i < size; i++) {
+            var sticker = new Sticker();
+            var metadata = new Metadata();
+            metadata.setName("sticker-" + i);
+            sticker.setMetadata(metadata);
+            // a few unset values, like stickers created before sequences existed
+            var spec = sticker.getSpec();
+            spec.setSequence(random.nextInt(20) == 0 ? null : random.nextInt(size));
+            spec.setDisplayName(random.nextInt(20) == 0 ? null
+                : "sticker " + Integer.toString(random.nextInt(size), 36));
+            spec.setGroupName("group-" + random.nextInt(64));
+            stickers[i] = sticker;
+        }
+        comparator = StickerSorter.from(sorter, ascending);
+    }
+
+    @Benchmark
+    public Sticker[] sort() {
+        var copy = Arrays.copyOf(stickers, stickers.length);
+        Arrays.sort(copy, comparator);
+        return copy;
+    }
+}
@@ -0,0 +1,69 @@
+package run.halo.sticker.pojo.query;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.domain.Sort;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import run.halo.app.extension.ListOptions;
+
+/**
+ * Measures parsing a sticker listing request into list options and an index sort, which runs
+ * on every listing before the extension store is queried.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StickerQueryBenchmark {
+
+    @Param({
+        "/stickers",
+        "/stickers?group=group-1&page=2&size=50",
+        "/stickers?group=group-1&keyword=cat&sort=DISPLAY_NAME&sortOrder=false",
+        "/stickers?group=group-1&cursor=&limit=100&sort=SEQUENCE&sort=creationTimestamp"
+    })
+    public String uri;
+
+    private ServerRequest request;
+
+    private StickerQuery query;
+
+    @Setup
+    public void setUp() {
+        var exchange = MockServerWebExchange.from(MockServerHttpRequest.get(uri));
+        request = ServerRequest.create(exchange,
+            HandlerStrategies.withDefaults().messageReaders());
+        query = new StickerQuery(request);
+    }
+
+    @Benchmark
+    public ListOptions toListOptions() {
+        return new StickerQuery(request).toListOptions();
+    }
+
+    @Benchmark
+    public ListOptions toListOptionsWithKeywordMatches() {
+        return query.toListOptions(List.of("sticker-1", "sticker-2", "sticker-3"));
+    }
+
+    @Benchmark
+    public Sort getSort() {
+        return new StickerQuery(request).getSort();
+    }
+
+    @Benchmark
+    public void toPageRequest(Blackhole blackhole) {
+        blackhole.consume(new StickerQuery(request).toPageRequest());
+    }
+}
@@ -0,0 +1,52 @@
+package run.halo.sticker.service.impl;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import reactor.core.publisher.Mono;
+import run.halo.app.extension.ListResult;
+import run.halo.app.extension.PageRequest;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.sticker.model.Sticker;
+
+/**
+ * A {@link ReactiveExtensionClient} stand-in that serves {@code listBy} pages from a list of
+ * stickers kept in memory, already in the requested order.
+ *
+ * <p>List options are not evaluated, so a benchmark against it measures the cost of the plugin
+ * around the store rather than the indexes of the store. Every other method fails.
+ */
+final class InMemoryStickerClient {
+
+    private InMemoryStickerClient() {
+    }
+
+    static ReactiveExtensionClient of(List<Sticker> stickers) {
+        return (ReactiveExtensionClient) Proxy.newProxyInstance(
+            InMemoryStickerClient.class.getClassLoader(),
+            new Class<?>[] {ReactiveExtensionClient.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "listBy" -> {
+                    if (args.length == 3 && args[0] == Sticker.class
+                        && args[2] instanceof PageRequest pageRequest) {
+                        yield Mono.just(page(stickers, pageRequest));
+                    }
+                    throw new UnsupportedOperationException(method.toString());
+                }
+                case "toString" -> "InMemoryStickerClient";
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> throw new UnsupportedOperationException(method.toString());
+            });
+    }
+
+    private static ListResult<Sticker> page(List<Sticker> stickers, PageRequest pageRequest) {
+        var size = pageRequest.getPageSize();
+        var page = pageRequest.getPageNumber();
+        if (size <= 0) {
+            return new ListResult<>(page, size, stickers.size(), stickers);
+        }
+        var from = Math.min(Math.max(page - 1, 0) * size, stickers.size());
+        var to = Math.min(from + size, stickers.size());
+        return new ListResult<>(page, size, stickers.size(), stickers.subList(from, to));
+    }
+}
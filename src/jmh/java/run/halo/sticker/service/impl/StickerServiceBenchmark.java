@@ -0,0 +1,84 @@
+package run.halo.sticker.service.impl;
+
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import run.halo.app.extension.ListResult;
+import run.halo.app.extension.Metadata;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.pojo.query.StickerQuery;
+import run.halo.sticker.pojo.vo.CursorListResult;
+
+/**
+ * Measures {@link StickerServiceImpl} listing a page of stickers from an
+ * {@link InMemoryStickerClient}, i.e. request parsing, list option building and the handling of
+ * the page, without the extension store itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StickerServiceBenchmark {
+
+    private static final int STICKER_COUNT = 10_000;
+
+    @Param({"20", "50", "200"})
+    public int size;
+
+    private StickerServiceImpl stickerService;
+
+    private ServerRequest pageRequest;
+
+    private ServerRequest cursorRequest;
+
+    @Setup
+    public void setUp() {
+        var stickers = new ArrayList<Sticker>(STICKER_COUNT);
+        for (int i = 0; i < STICKER_COUNT; i++) {
+            var sticker = new Sticker();
+            var metadata = new Metadata();
+            metadata.setName("sticker-" + i);
+            metadata.setVersion(1L);
+            sticker.setMetadata(metadata);
+            var spec = sticker.getSpec();
+            spec.setGroupName("group-1");
+            spec.setDisplayName("sticker " + i);
+            spec.setSequence(i * 1024);
+            spec.setAttachmentName("attachment-" + i);
+            spec.setUrl("/upload/stickers/" + i + ".png");
+            stickers.add(sticker);
+        }
+        // the search index is reported as loading, so keywords fall back to a contains query,
+        // and every sticker has a URL, so no permalink is ever resolved
+        stickerService = new StickerServiceImpl(InMemoryStickerClient.of(stickers),
+            keyword -> Optional.empty(), null);
+        pageRequest = request("/stickers?group=group-1&page=3&size=" + size);
+        cursorRequest = request("/stickers?group=group-1&cursor=&limit=" + size);
+    }
+
+    private static ServerRequest request(String uri) {
+        var exchange = MockServerWebExchange.from(MockServerHttpRequest.get(uri));
+        return ServerRequest.create(exchange, HandlerStrategies.withDefaults().messageReaders());
+    }
+
+    @Benchmark
+    public ListResult<Sticker> listStickers() {
+        return stickerService.listStickers(new StickerQuery(pageRequest)).block();
+    }
+
+    @Benchmark
+    public CursorListResult<Sticker> listStickersByCursor() {
+        return stickerService.listStickersByCursor(new StickerQuery(cursorRequest)).block();
+    }
+}
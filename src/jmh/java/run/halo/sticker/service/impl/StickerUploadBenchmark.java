@@ -0,0 +1,66 @@
+package run.halo.sticker.service.impl;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import run.halo.sticker.infra.StickerMetrics;
+
+/**
+ * Measures the admission check every uploaded sticker passes through, over a PNG file just below
+ * the default size limit split into buffers of the given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StickerUploadBenchmark {
+
+    private static final int MAX_FILE_SIZE = 2 * 1024 * 1024;
+    private static final int FILE_SIZE = MAX_FILE_SIZE - 1;
+    private static final byte[] PNG_SIGNATURE =
+        {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+
+    @Param({"1024", "8192", "65536"})
+    public int bufferSize;
+
+    private StickerMetrics metrics;
+
+    private DataBuffer[] buffers;
+
+    @Setup
+    public void setUp() {
+        metrics = new StickerMetrics();
+        var count = (FILE_SIZE + bufferSize - 1) / bufferSize;
+        buffers = new DataBuffer[count];
+        for (int i = 0; i < count; i++) {
+            var bytes = new byte[Math.min(bufferSize, FILE_SIZE - i * bufferSize)];
+            if (i == 0) {
+                System.arraycopy(PNG_SIGNATURE, 0, bytes, 0, PNG_SIGNATURE.length);
+            }
+            // the check never moves the read position, so the buffers can be reused
+            buffers[i] = DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        metrics.destroy();
+    }
+
+    @Benchmark
+    public Long admissionCheck() {
+        var admission = new UploadAdmission(MAX_FILE_SIZE, metrics);
+        return StickerUploadServiceImpl.admissionCheck(Flux.fromArray(buffers), admission)
+            .count()
+            .block();
+    }
+}
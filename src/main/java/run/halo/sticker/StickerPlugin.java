@@ -10,6 +10,8 @@ import run.halo.app.plugin.BasePlugin;
 import run.halo.app.plugin.PluginContext;
 import run.halo.sticker.model.Sticker;
 import run.halo.sticker.model.StickerGroup;
+import run.halo.sticker.model.StickerUsage;
+import run.halo.sticker.pojo.query.OrdinalIndexKey;
 
 @Component
 public class StickerPlugin extends BasePlugin {
@@ -30,13 +32,85 @@ public class StickerPlugin extends BasePlugin {
                     return tags == null ? "" : tags;
                 }))
             );
+            indexSpecs.add(new IndexSpec()
+                .setName("spec.attachmentName")
+                .setIndexFunc(simpleAttribute(Sticker.class, sticker -> {
+                    var attachmentName = sticker.getSpec().getAttachmentName();
+                    return attachmentName == null ? "" : attachmentName;
+                }))
+            );
+            indexSpecs.add(new IndexSpec()
+                .setName("spec.sequence")
+                .setIndexFunc(simpleAttribute(Sticker.class, sticker -> {
+                    return OrdinalIndexKey.of(sticker.getSpec().getSequence());
+                }))
+            );
+            indexSpecs.add(new IndexSpec()
+                .setName("spec.displayName")
+                .setIndexFunc(simpleAttribute(Sticker.class, sticker -> {
+                    var displayName = sticker.getSpec().getDisplayName();
+                    return displayName == null ? "" : displayName;
+                }))
+            );
+            indexSpecs.add(new IndexSpec()
+                .setName("spec.description")
+                .setIndexFunc(simpleAttribute(Sticker.class, sticker -> {
+                    var description = sticker.getSpec().getDescription();
+                    return description == null ? "" : description;
+                }))
+            );
+            indexSpecs.add(new IndexSpec()
+                .setName("spec.shortcode")
+                .setIndexFunc(simpleAttribute(Sticker.class, sticker -> {
+                    var shortcode = sticker.getSpec().getShortcode();
+                    return shortcode == null ? "" : shortcode;
+                }))
+            );
+            indexSpecs.add(new IndexSpec()
+                .setName("spec.contentHash")
+                .setIndexFunc(simpleAttribute(Sticker.class, sticker -> {
+                    var contentHash = sticker.getSpec().getContentHash();
+                    return contentHash == null ? "" : contentHash;
+                }))
+            );
+        });
+        schemeManager.register(StickerGroup.class, indexSpecs -> {
+            indexSpecs.add(new IndexSpec()
+                .setName("spec.owner")
+                .setIndexFunc(simpleAttribute(StickerGroup.class, group -> {
+                    var spec = group.getSpec();
+                    return spec == null || spec.getOwner() == null ? "" : spec.getOwner();
+                }))
+            );
+            indexSpecs.add(new IndexSpec()
+                .setName("spec.isPublic")
+                .setIndexFunc(simpleAttribute(StickerGroup.class, group -> {
+                    var spec = group.getSpec();
+                    return String.valueOf(spec != null && Boolean.TRUE.equals(spec.getIsPublic()));
+                }))
+            );
+            indexSpecs.add(new IndexSpec()
+                .setName("spec.isDefault")
+                .setIndexFunc(simpleAttribute(StickerGroup.class, group -> {
+                    var spec = group.getSpec();
+                    return String.valueOf(spec != null && Boolean.TRUE.equals(spec.getIsDefault()));
+                }))
+            );
+            indexSpecs.add(new IndexSpec()
+                .setName("spec.priority")
+                .setIndexFunc(simpleAttribute(StickerGroup.class, group -> {
+                    var spec = group.getSpec();
+                    return OrdinalIndexKey.of(spec == null ? null : spec.getPriority());
+                }))
+            );
         });
-        schemeManager.register(StickerGroup.class);
+        schemeManager.register(StickerUsage.class);
     }
 
     @Override
     public void stop() {
         schemeManager.unregister(Scheme.buildFromType(Sticker.class));
         schemeManager.unregister(Scheme.buildFromType(StickerGroup.class));
+        schemeManager.unregister(Scheme.buildFromType(StickerUsage.class));
     }
 }
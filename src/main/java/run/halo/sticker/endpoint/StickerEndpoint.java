@@ -1,19 +1,24 @@
 package run.halo.sticker.endpoint;
 
 import static org.springdoc.core.fn.builders.apiresponse.Builder.responseBuilder;
+import static org.springdoc.core.fn.builders.parameter.Builder.parameterBuilder;
+import static org.springdoc.core.fn.builders.requestbody.Builder.requestBodyBuilder;
 import static org.springdoc.webflux.core.fn.SpringdocRouteBuilder.route;
 import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
 
-import com.google.common.io.Files;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
+import java.net.URI;
 import java.security.Principal;
 import java.time.Duration;
-import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Arrays;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.dao.OptimisticLockingFailureException;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.http.codec.multipart.Part;
@@ -21,42 +26,50 @@ import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.stereotype.Component;
 import org.springframework.util.MultiValueMap;
-import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import org.springframework.web.server.ServerWebInputException;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.util.retry.Retry;
-import run.halo.app.core.extension.attachment.Attachment;
 import run.halo.app.core.extension.endpoint.CustomEndpoint;
-import run.halo.app.core.extension.service.AttachmentService;
 import run.halo.app.extension.GroupVersion;
 import run.halo.app.extension.ListResult;
-import run.halo.app.extension.Metadata;
-import run.halo.app.extension.ReactiveExtensionClient;
-import run.halo.app.plugin.ReactiveSettingFetcher;
-import run.halo.sticker.infra.StickerSetting;
+import run.halo.sticker.infra.StickerMetrics;
 import run.halo.sticker.model.Sticker;
-import run.halo.sticker.model.StickerGroup;
 import run.halo.sticker.pojo.query.StickerQuery;
+import run.halo.sticker.pojo.vo.StickerManifest;
+import run.halo.sticker.pojo.vo.StickerUsageSummary;
+import run.halo.sticker.service.StickerGroupService;
+import run.halo.sticker.service.StickerManifestService;
+import run.halo.sticker.service.StickerOrderService;
+import run.halo.sticker.service.StickerRenditionService;
 import run.halo.sticker.service.StickerService;
+import run.halo.sticker.service.StickerUploadService;
+import run.halo.sticker.service.StickerUsageService;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class StickerEndpoint implements CustomEndpoint {
 
-    private static final String SELF_USER = "-";
-    private static final String STICKER_GROUP_NAME = "sticker-group";
-    private static final String DEFAULT_STICKER_ATTACHMENT_POLICY_NAME = "default-policy";
-    private static final DataSize MAX_FILE_SIZE = DataSize.ofMegabytes(2L);
-    private final ReactiveExtensionClient client;
-    private final AttachmentService attachmentService;
-    private final ReactiveSettingFetcher settingFetcher;
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int DEFAULT_USAGE_LIMIT = 20;
+    private static final int MAX_USAGE_LIMIT = 100;
+    /**
+     * Thumbnail and sprite image URLs carry a content version, so a response never changes.
+     */
+    static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final Duration UNVERSIONED_THUMBNAIL_MAX_AGE = Duration.ofMinutes(5);
+
     private final StickerService stickerService;
+    private final StickerManifestService stickerManifestService;
+    private final StickerUploadService stickerUploadService;
+    private final StickerRenditionService stickerRenditionService;
+    private final StickerOrderService stickerOrderService;
+    private final StickerUsageService stickerUsageService;
+    private final StickerMetrics stickerMetrics;
 
     @Override
     public RouterFunction<ServerResponse> endpoint() {
@@ -65,13 +78,71 @@ public class StickerEndpoint implements CustomEndpoint {
             .GET("stickers", this::listStickersByGroup,
                 builder -> {
                     builder.operationId("ListStickers")
-                        .description("List stickers by group.")
+                        .description("List stickers by group, by page or by cursor.")
                         .tag(tag)
                         .response(responseBuilder().implementation(
                             ListResult.generateGenericClass(Sticker.class))
                         );
-                    // 如果有查询参数，可以在这里添加
-                    // StickerQuery.buildParameters(builder);
+                    StickerQuery.buildParameters(builder);
+                }
+            )
+            .GET("stickers/-/manifest", this::getStickerManifest,
+                builder -> {
+                    builder.operationId("GetStickerManifest")
+                        .description("Get sticker groups visible to current user with their "
+                            + "stickers, revalidated by ETag.")
+                        .tag(tag)
+                        .response(responseBuilder().implementation(StickerManifest.class));
+                }
+            )
+            .GET("stickers/{name}/thumbnail", this::getStickerThumbnail,
+                builder -> {
+                    builder.operationId("GetStickerThumbnail")
+                        .description("Get a PNG thumbnail of the sticker, or a redirect to the "
+                            + "original file if it is animated or cannot be decoded.")
+                        .tag(tag)
+                        .parameter(parameterBuilder()
+                            .in(ParameterIn.PATH)
+                            .name("name")
+                            .description("Sticker name")
+                            .required(true))
+                        .parameter(parameterBuilder()
+                            .in(ParameterIn.QUERY)
+                            .name("size")
+                            .description("Edge length in pixels, one of "
+                                + StickerRenditionService.THUMBNAIL_SIZES)
+                            .implementation(Integer.class)
+                            .required(false))
+                        .response(responseBuilder().implementation(byte[].class));
+                }
+            )
+            .GET("stickers/-/usage", this::getStickerUsage,
+                builder -> {
+                    builder.operationId("GetStickerUsage")
+                        .description("Get the stickers current user used most recently and "
+                            + "most often.")
+                        .tag(tag)
+                        .parameter(parameterBuilder()
+                            .in(ParameterIn.QUERY)
+                            .name("limit")
+                            .description("Maximum number of stickers in each list, at most "
+                                + MAX_USAGE_LIMIT)
+                            .implementation(Integer.class)
+                            .required(false))
+                        .response(responseBuilder().implementation(StickerUsageSummary.class));
+                }
+            )
+            .POST("stickers/{name}/usage", this::recordStickerUsage,
+                builder -> {
+                    builder.operationId("RecordStickerUsage")
+                        .description("Record that current user inserted a sticker.")
+                        .tag(tag)
+                        .parameter(parameterBuilder()
+                            .in(ParameterIn.PATH)
+                            .name("name")
+                            .description("Sticker name")
+                            .required(true))
+                        .response(responseBuilder().implementation(Void.class));
                 }
             )
             .POST("stickers/-/upload", contentType(MediaType.MULTIPART_FORM_DATA),
@@ -80,13 +151,43 @@ public class StickerEndpoint implements CustomEndpoint {
                     builder.operationId("UploadSticker")
                         .description("Upload a user sticker.")
                         .tag(tag)
+                        .parameter(parameterBuilder()
+                            .in(ParameterIn.HEADER)
+                            .name(IDEMPOTENCY_KEY_HEADER)
+                            .description("Client chosen key of the upload. Retries with the "
+                                + "same key return the first result instead of uploading "
+                                + "again.")
+                            .implementation(String.class)
+                            .required(false))
                         .response(responseBuilder().implementation(Sticker.class));
                 }
             )
+            .POST("stickers/-/upload-batch", contentType(MediaType.MULTIPART_FORM_DATA),
+                this::uploadUserStickers,
+                builder -> {
+                    builder.operationId("UploadStickers")
+                        .description("Upload user stickers in batch, one result per file part.")
+                        .tag(tag)
+                        .response(responseBuilder().implementationArray(
+                            StickerUploadService.UploadResult.class));
+                }
+            )
+            .POST("stickers/-/bulk-update", this::bulkUpdateStickers,
+                builder -> {
+                    builder.operationId("BulkUpdateStickers")
+                        .description("Reorder stickers and move them between groups owned by "
+                            + "current user, one result per written or rejected sticker.")
+                        .tag(tag)
+                        .requestBody(requestBodyBuilder().required(true)
+                            .implementationArray(StickerOrderService.Patch.class))
+                        .response(responseBuilder().implementationArray(
+                            StickerOrderService.PatchResult.class));
+                }
+            )
             .DELETE("stickers/{name}", this::deleteStickers,
                 builder -> {
                     builder.operationId("DeleteSticker")
-                        .description("Delete a sticker.")
+                        .description("Delete a sticker in a group owned by current user.")
                         .tag(tag)
                         .response(responseBuilder().implementation(Void.class));
                 }
@@ -100,113 +201,158 @@ public class StickerEndpoint implements CustomEndpoint {
     }
 
     private Mono<ServerResponse> listStickersByGroup(ServerRequest request) {
-        log.info("List stickers by group");
         var query = new StickerQuery(request);
-        return stickerService.listStickers(query)
+        log.debug("List stickers by query {}", request.queryParams());
+        Mono<?> listing = query.isCursorMode()
+            ? stickerService.listStickersByCursor(query)
+            : stickerService.listStickers(query);
+        return Mono.defer(() -> {
+                var start = System.nanoTime();
+                return listing.doOnSuccess(result -> stickerMetrics.recordList(queryShape(query),
+                    Duration.ofNanos(System.nanoTime() - start)));
+            })
             .flatMap(stickers -> ServerResponse.ok().bodyValue(stickers));
     }
 
-    private Mono<ServerResponse> uploadUserSticker(ServerRequest request) {
-        var groupName = request.queryParam("sticker-group").orElse(SELF_USER);
-        log.info("Uploading sticker for user");
-        return request.body(BodyExtractors.toMultipartData())
-            .map(StickerUploadRequest::new)
-            .flatMap(this::uploadSticker)
-            .flatMap(uploadAttachmentDto -> getOrCreateStickerGroup(groupName)
-                .flatMap(stickerGroup -> saveSticker(uploadAttachmentDto)
-                    .doOnNext(sticker -> sticker.getSpec().setGroupName(stickerGroup.getMetadata().getName()))
-                    .flatMap(client::update)
-                )
-            )
-            .retryWhen(Retry.backoff(3, Duration.ofMillis(100))
-                .filter(throwable -> throwable instanceof OptimisticLockingFailureException))
-            .flatMap(sticker -> ServerResponse.ok().bodyValue(sticker));
+    /**
+     * Describes a listing by its mode and filters only, so the shape stays a small fixed set.
+     */
+    private static String queryShape(StickerQuery query) {
+        var shape = query.isCursorMode() ? "cursor" : "page";
+        if (StringUtils.isNotBlank(query.getGroup())) {
+            shape += "-group";
+        }
+        if (StringUtils.isNotBlank(query.getKeyword())) {
+            shape += "-keyword";
+        }
+        return shape;
     }
 
-    private Mono<ServerResponse> deleteStickers(ServerRequest request) {
-        log.info("Deleting sticker");
-        return ServerResponse.ok().build();
+    private Mono<ServerResponse> getStickerUsage(ServerRequest request) {
+        var limit = request.queryParam("limit")
+            .map(value -> NumberUtils.toInt(value, DEFAULT_USAGE_LIMIT))
+            .map(value -> Math.min(Math.max(value, 1), MAX_USAGE_LIMIT))
+            .orElse(DEFAULT_USAGE_LIMIT);
+        return getUserName()
+            .flatMap(username -> stickerUsageService.getSummary(username, limit))
+            .flatMap(summary -> ServerResponse.ok().bodyValue(summary));
     }
 
-    private Mono<Sticker> saveSticker(UploadAttachmentDto dto) {
-        var sticker = new Sticker();
-        var metadata = new Metadata();
-        metadata.setName(UUID.randomUUID().toString());
-        sticker.setMetadata(metadata);
-        Sticker.StickerSpec stickerSpec = new Sticker.StickerSpec();
-        stickerSpec.setAttachmentName(dto.attachment.getMetadata().getName());
-        stickerSpec.setDisplayName(dto.fileName);
-        sticker.setSpec(stickerSpec);
-        log.info("Creating sticker: {}", sticker);
-        return client.create(sticker);
+    private Mono<ServerResponse> recordStickerUsage(ServerRequest request) {
+        var name = request.pathVariable("name");
+        return getUserName()
+            .flatMap(username -> stickerUsageService.record(username, name))
+            .then(ServerResponse.noContent().build());
     }
 
-    private Mono<StickerGroup> getOrCreateStickerGroup(String groupName) {
-        //todo find the default group
-        String finalGroupName = SELF_USER.equals(groupName) ? UUID.randomUUID().toString() : groupName;
-        return client.fetch(StickerGroup.class, finalGroupName)
-                .switchIfEmpty(getUserName().flatMap(userName -> createSelfStickerGroup(finalGroupName, userName)));
+    private Mono<ServerResponse> getStickerManifest(ServerRequest request) {
+        return getUserName()
+            .flatMap(stickerManifestService::getManifest)
+            .flatMap(snapshot -> {
+                if (isNotModified(request, snapshot.etag())) {
+                    return ServerResponse.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(snapshot.etag())
+                        .cacheControl(CacheControl.noCache())
+                        .build();
+                }
+                return ServerResponse.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .eTag(snapshot.etag())
+                    .cacheControl(CacheControl.noCache())
+                    .bodyValue(snapshot.body());
+            });
     }
 
-    private Mono<String> getUserName() {
-        return ReactiveSecurityContextHolder.getContext()
-                .map(SecurityContext::getAuthentication)
-                .map(Principal::getName);
+    private Mono<ServerResponse> getStickerThumbnail(ServerRequest request) {
+        var name = request.pathVariable("name");
+        var size = request.queryParam("size")
+            .map(value -> {
+                var parsed = NumberUtils.toInt(value, -1);
+                if (!StickerRenditionService.THUMBNAIL_SIZES.contains(parsed)) {
+                    throw new ServerWebInputException("Thumbnail size must be one of "
+                        + StickerRenditionService.THUMBNAIL_SIZES);
+                }
+                return parsed;
+            })
+            .orElse(StickerRenditionService.DEFAULT_THUMBNAIL_SIZE);
+        return stickerRenditionService.getThumbnail(name, size)
+            .flatMap(rendition -> {
+                if (rendition.file() == null) {
+                    return ServerResponse.temporaryRedirect(URI.create(rendition.originalUrl()))
+                        .cacheControl(CacheControl.maxAge(Duration.ofDays(1)))
+                        .build();
+                }
+                // only a URL naming the current version may be cached for good, a missing or
+                // stale token gets whatever the attachment is now
+                var cacheControl = rendition.version() != null
+                    && rendition.version().equals(request.queryParam("v").orElse(null))
+                    ? IMMUTABLE_CACHE_CONTROL
+                    : CacheControl.maxAge(UNVERSIONED_THUMBNAIL_MAX_AGE).cachePublic()
+                        .getHeaderValue();
+                return ServerResponse.ok()
+                    .contentType(MediaType.IMAGE_PNG)
+                    .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+                    .body(BodyInserters.fromResource(new FileSystemResource(rendition.file())));
+            })
+            .switchIfEmpty(ServerResponse.notFound().build());
     }
 
-    private Mono<StickerGroup> createSelfStickerGroup(String groupName, String userName) {
-        var stickerGroup = new StickerGroup();
-        var metadata = new Metadata();
-        metadata.setName(groupName);
-        stickerGroup.setMetadata(metadata);
-        var stickerGroupSpec = new StickerGroup.StickerGroupSpec();
-        stickerGroupSpec.setDisplayName(userName + "'s Stickers");
-        stickerGroupSpec.setIsPublic(false);
-        stickerGroupSpec.setIsDefault(true);
-        stickerGroupSpec.setOwner(userName);
-        stickerGroup.setSpec(stickerGroupSpec);
-        log.info("Creating sticker group: {}", stickerGroup);
-        return client.create(stickerGroup);
+    static boolean isNotModified(ServerRequest request, String etag) {
+        return request.headers().header(HttpHeaders.IF_NONE_MATCH).stream()
+            .flatMap(value -> Arrays.stream(value.split(",")))
+            .map(String::trim)
+            .map(value -> StringUtils.removeStart(value, "W/"))
+            .anyMatch(value -> "*".equals(value) || etag.equals(value));
     }
 
-    private Mono<UploadAttachmentDto> uploadSticker(StickerUploadRequest uploadRequest) {
-        FilePart filePart = uploadRequest.getFile();
-        String fileName = filePart.filename(); // 获取 filename
+    private Mono<ServerResponse> uploadUserSticker(ServerRequest request) {
+        var groupName = request.queryParam("sticker-group").orElse(StickerGroupService.SELF_GROUP);
+        var idempotencyKey = StringUtils.trimToNull(
+            request.headers().firstHeader(IDEMPOTENCY_KEY_HEADER));
+        log.debug("Uploading sticker to group {}", groupName);
+        var contentLength = request.headers().contentLength();
+        var admission = contentLength.isPresent()
+            ? stickerUploadService.checkContentLength(contentLength.getAsLong())
+            : Mono.<Void>empty();
+        return admission.then(request.body(BodyExtractors.toMultipartData()))
+            .map(StickerUploadRequest::new)
+            .flatMap(uploadRequest -> stickerUploadService.upload(uploadRequest.getFile(),
+                groupName, idempotencyKey))
+            .flatMap(sticker -> ServerResponse.ok().bodyValue(sticker));
+    }
 
-        log.info("Uploading sticker file: {}", filePart.filename());
-        return settingFetcher.fetch(StickerSetting.Attachment.GROUP,
-                StickerSetting.Attachment.class)
-            .switchIfEmpty(
-                Mono.error(new IllegalStateException("Attachment setting is not configured"))
-            )
-            .flatMap(stickerSetting -> Mono.defer(
-                    () -> {
-                        String stickerPolicy = stickerSetting.getAttachmentPolicyName();
-                        if (StringUtils.isBlank(stickerPolicy)) {
-                            stickerPolicy = DEFAULT_STICKER_ATTACHMENT_POLICY_NAME;
-                        }
-                        var ext = Files.getFileExtension(filePart.filename());
-                        return attachmentService.upload(stickerPolicy,
-                            STICKER_GROUP_NAME,
-                            UUID.randomUUID() + "." + ext,
-                            maxSizeCheck(filePart.content()),
-                            filePart.headers().getContentType()
-                        );
-                    })
-                .doOnSuccess(attachment -> log.info("Sticker file uploaded: {}", attachment))
-                .map(attachment -> new UploadAttachmentDto(attachment, fileName))
-            );
+    private Mono<ServerResponse> uploadUserStickers(ServerRequest request) {
+        var groupName = request.queryParam("sticker-group").orElse(StickerGroupService.SELF_GROUP);
+        log.debug("Uploading stickers in batch to group {}", groupName);
+        var fileParts = request.body(BodyExtractors.toParts())
+            .filter(part -> "file".equals(part.name()))
+            .filter(FilePart.class::isInstance)
+            .cast(FilePart.class);
+        return stickerUploadService.uploadBatch(fileParts, groupName)
+            .collectList()
+            .flatMap(results -> ServerResponse.ok().bodyValue(results));
     }
 
-    private Flux<DataBuffer> maxSizeCheck(Flux<DataBuffer> content) {
-        var lenRef = new AtomicInteger(0);
-        return content.doOnNext(dataBuffer -> {
-            int len = lenRef.accumulateAndGet(dataBuffer.readableByteCount(), Integer::sum);
-            if (len > MAX_FILE_SIZE.toBytes()) {
-                throw new ServerWebInputException("The sticker file needs to be smaller than "
-                    + MAX_FILE_SIZE.toMegabytes() + " MB.");
-            }
-        });
+    private Mono<ServerResponse> bulkUpdateStickers(ServerRequest request) {
+        return Mono.zip(getUserName(),
+                request.bodyToFlux(StickerOrderService.Patch.class).collectList())
+            .flatMap(tuple -> stickerOrderService.apply(tuple.getT2(), tuple.getT1())
+                .collectList())
+            .flatMap(results -> ServerResponse.ok().bodyValue(results));
+    }
+
+    private Mono<ServerResponse> deleteStickers(ServerRequest request) {
+        var name = request.pathVariable("name");
+        return getUserName()
+            .flatMap(username -> stickerService.deleteSticker(name, username))
+            .flatMap(deleted -> ServerResponse.noContent().build())
+            .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    private Mono<String> getUserName() {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .map(Principal::getName);
     }
 
     public record StickerUploadRequest(MultiValueMap<String, Part> formData) {
@@ -223,7 +369,4 @@ public class StickerEndpoint implements CustomEndpoint {
             return filePart;
         }
     }
-
-    public record UploadAttachmentDto(Attachment attachment, String fileName) {
-    }
 }
@@ -1,24 +1,46 @@
 package run.halo.sticker.endpoint;
 
 import static org.springdoc.core.fn.builders.apiresponse.Builder.responseBuilder;
+import static org.springdoc.core.fn.builders.parameter.Builder.parameterBuilder;
 import static org.springdoc.webflux.core.fn.SpringdocRouteBuilder.route;
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
 
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.util.List;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FormFieldPart;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
 import reactor.core.publisher.Mono;
 import run.halo.app.core.extension.endpoint.CustomEndpoint;
 import run.halo.app.extension.GroupVersion;
 import run.halo.app.extension.ListResult;
-import run.halo.app.extension.Metadata;
 import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.extension.router.SortableRequest;
 import run.halo.sticker.model.StickerGroup;
+import run.halo.sticker.pojo.query.StickerGroupQuery;
+import run.halo.sticker.pojo.vo.StickerSpriteSheet;
+import run.halo.sticker.service.StickerExportService;
+import run.halo.sticker.service.StickerGroupService;
+import run.halo.sticker.service.StickerSpriteService;
+import run.halo.sticker.service.StickerUploadService;
 
 @Slf4j
 @Component
@@ -26,22 +48,58 @@ import run.halo.sticker.model.StickerGroup;
 public class StickerGroupEndpoint implements CustomEndpoint {
 
     private final ReactiveExtensionClient client;
+    private final StickerUploadService stickerUploadService;
+    private final StickerSpriteService stickerSpriteService;
+    private final StickerGroupService stickerGroupService;
+    private final StickerExportService stickerExportService;
 
     @Override
     public RouterFunction<ServerResponse> endpoint() {
         final var tag = "sticker.api.halo.run/v1alpha1/StickerGroup";
         return route()
             .GET("stickerGroups", this::listStickerGroups,
-                builder -> builder.operationId("ListStickerGroups")
-                    .description("List sticker groups.")
-                    .tag(tag)
-                    .response(responseBuilder().implementation(
-                        ListResult.generateGenericClass(StickerGroup.class))))
+                builder -> {
+                    builder.operationId("ListStickerGroups")
+                        .description("List sticker groups owned by current user or public.")
+                        .tag(tag)
+                        .response(responseBuilder().implementation(
+                            ListResult.generateGenericClass(StickerGroup.class)));
+                    SortableRequest.buildParameters(builder);
+                })
             .POST("stickerGroups", this::createStickerGroup,
                 builder -> builder.operationId("CreateStickerGroup")
                     .description("Create a sticker group.")
                     .tag(tag)
                     .response(responseBuilder().implementation(StickerGroup.class)))
+            .POST("stickerGroups/-/import", contentType(MediaType.MULTIPART_FORM_DATA),
+                this::importStickerGroup,
+                builder -> builder.operationId("ImportStickerGroup")
+                    .description("Import a ZIP sticker pack as a new sticker group.")
+                    .tag(tag)
+                    .response(responseBuilder().implementation(StickerGroup.class)))
+            .GET("stickerGroups/{name}/sprite", this::getSpriteSheet,
+                builder -> builder.operationId("GetStickerGroupSprite")
+                    .description("Get the sprite sheet map of a sticker group, revalidated by "
+                        + "ETag.")
+                    .tag(tag)
+                    .response(responseBuilder().implementation(StickerSpriteSheet.class)))
+            .GET("stickerGroups/{name}/sprite-image", this::getSpriteImage,
+                builder -> builder.operationId("GetStickerGroupSpriteImage")
+                    .description("Get the PNG sprite sheet of a sticker group by its hash.")
+                    .tag(tag)
+                    .parameter(parameterBuilder()
+                        .in(ParameterIn.QUERY)
+                        .name("hash")
+                        .description("Hash of the sprite sheet")
+                        .implementation(String.class)
+                        .required(true))
+                    .response(responseBuilder().implementation(byte[].class)))
+            .GET("stickerGroups/{name}/export", this::exportStickerGroup,
+                builder -> builder.operationId("ExportStickerGroup")
+                    .description("Export a sticker group as a ZIP archive with a manifest.json "
+                        + "of the group and sticker metadata.")
+                    .tag(tag)
+                    .response(responseBuilder().implementation(byte[].class)))
             .PUT("stickerGroups/{name}", this::updateStickerGroup,
                 builder -> builder.operationId("UpdateStickerGroup")
                     .description("Update a sticker group.")
@@ -61,44 +119,99 @@ public class StickerGroupEndpoint implements CustomEndpoint {
     }
 
     private Mono<ServerResponse> listStickerGroups(ServerRequest request) {
+        var query = new StickerGroupQuery(request);
         return getUserName()
-            .flatMap(username -> client.list(StickerGroup.class,
-                    stickerGroup -> username.equals(stickerGroup.getSpec().getOwner())
-                        || stickerGroup.getSpec().getIsPublic(),
-                    null)
-                .collectList()
-                .flatMap(list -> {
-                    if (list.isEmpty()) {
-                        return createDefaultStickerGroup(username)
-                            .map(defaultGroup -> {
-                                list.add(defaultGroup);
-                                return list;
-                            });
+            .flatMap(username -> client.listBy(StickerGroup.class,
+                    query.toListOptions(username), query.toPageRequest())
+                .flatMap(listResult -> {
+                    if (listResult.getTotal() == 0) {
+                        return stickerGroupService.getOrCreateDefaultGroup(username)
+                            .map(defaultGroup -> new ListResult<>(List.of(defaultGroup)));
                     }
-                    return Mono.just(list);
+                    return Mono.just(listResult);
                 }))
-            .flatMap(list -> ServerResponse.ok().bodyValue(list));
-    }
-
-    private Mono<StickerGroup> createDefaultStickerGroup(String username) {
-        StickerGroup defaultGroup = new StickerGroup();
-        defaultGroup.setMetadata(new Metadata());
-        defaultGroup.getMetadata().setName(username + "-stickers");
-        defaultGroup.setSpec(new StickerGroup.StickerGroupSpec());
-        defaultGroup.getSpec().setDisplayName("我的表情");
-        defaultGroup.getSpec().setIsPublic(false);
-        defaultGroup.getSpec().setIsDefault(true);
-        defaultGroup.getSpec().setOwner(username);
-
-        return client.create(defaultGroup);
+            .flatMap(listResult -> ServerResponse.ok().bodyValue(listResult));
     }
 
     private Mono<ServerResponse> createStickerGroup(ServerRequest request) {
         return getUserName().flatMap(username -> request.bodyToMono(StickerGroup.class)
             .doOnNext(stickerGroup -> stickerGroup.getSpec().setOwner(username))
+            .doOnNext(StickerGroupEndpoint::checkPriority)
             .flatMap(client::create)).flatMap(created -> ServerResponse.ok().bodyValue(created));
     }
 
+    private Mono<ServerResponse> importStickerGroup(ServerRequest request) {
+        return request.body(BodyExtractors.toMultipartData())
+            .flatMap(formData -> {
+                var pack = new StickerEndpoint.StickerUploadRequest(formData).getFile();
+                if (!StringUtils.endsWithIgnoreCase(pack.filename(), ".zip")) {
+                    return Mono.error(
+                        new ServerWebInputException("The sticker pack must be a ZIP archive"));
+                }
+                var displayName = formData.getFirst("displayName") instanceof FormFieldPart field
+                    ? field.value() : null;
+                return stickerUploadService.importPack(pack, displayName);
+            })
+            .flatMap(imported -> ServerResponse.ok().bodyValue(imported));
+    }
+
+    private Mono<ServerResponse> getSpriteSheet(ServerRequest request) {
+        var name = request.pathVariable("name");
+        return getVisibleGroup(name)
+            .flatMap(group -> stickerSpriteService.getSpriteSheet(name))
+            .flatMap(sheet -> {
+                var etag = "\"" + sheet.hash() + "\"";
+                if (StickerEndpoint.isNotModified(request, etag)) {
+                    return ServerResponse.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(etag)
+                        .cacheControl(CacheControl.noCache())
+                        .build();
+                }
+                return ServerResponse.ok()
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .bodyValue(sheet);
+            })
+            .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    private Mono<ServerResponse> getSpriteImage(ServerRequest request) {
+        var name = request.pathVariable("name");
+        var hash = request.queryParam("hash")
+            .filter(StringUtils::isAlphanumeric)
+            .orElseThrow(() -> new ServerWebInputException("Invalid sprite sheet hash"));
+        return getVisibleGroup(name)
+            .flatMap(group -> stickerSpriteService.getSpriteImage(name, hash))
+            .flatMap(file -> ServerResponse.ok()
+                .contentType(MediaType.IMAGE_PNG)
+                .header(HttpHeaders.CACHE_CONTROL, StickerEndpoint.IMMUTABLE_CACHE_CONTROL)
+                .body(BodyInserters.fromResource(new FileSystemResource(file))))
+            .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    private Mono<ServerResponse> exportStickerGroup(ServerRequest request) {
+        var name = request.pathVariable("name");
+        return getVisibleGroup(name)
+            .flatMap(group -> {
+                var fileName = StringUtils.defaultIfBlank(group.getSpec().getDisplayName(), name)
+                    + ".zip";
+                return ServerResponse.ok()
+                    .contentType(MediaType.parseMediaType("application/zip"))
+                    .headers(headers -> headers.setContentDisposition(ContentDisposition.attachment()
+                        .filename(fileName, StandardCharsets.UTF_8)
+                        .build()))
+                    .body(BodyInserters.fromDataBuffers(stickerExportService.exportGroup(group)));
+            })
+            .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    private Mono<StickerGroup> getVisibleGroup(String name) {
+        return getUserName().flatMap(username -> client.fetch(StickerGroup.class, name)
+            .filter(group -> group.getSpec() != null
+                && (username.equals(group.getSpec().getOwner())
+                || Boolean.TRUE.equals(group.getSpec().getIsPublic()))));
+    }
+
     private Mono<ServerResponse> updateStickerGroup(ServerRequest request) {
         String name = request.pathVariable("name");
         return getUserName().flatMap(username -> client.get(StickerGroup.class, name)
@@ -108,6 +221,7 @@ public class StickerGroupEndpoint implements CustomEndpoint {
                     existingGroup -> request.bodyToMono(StickerGroup.class).doOnNext(updatedGroup -> {
                         updatedGroup.getMetadata().setName(name);
                         updatedGroup.getSpec().setOwner(username);
+                        checkPriority(updatedGroup);
                     }).flatMap(client::update)))
             .flatMap(updated -> ServerResponse.ok().bodyValue(updated))
             .onErrorResume(IllegalAccessException.class, e -> ServerResponse.notFound().build());
@@ -122,6 +236,13 @@ public class StickerGroupEndpoint implements CustomEndpoint {
             .onErrorResume(IllegalAccessException.class, e -> ServerResponse.notFound().build());
     }
 
+    private static void checkPriority(StickerGroup group) {
+        var priority = group.getSpec().getPriority();
+        if (priority != null && priority < 0) {
+            throw new ServerWebInputException("Sticker group priority must not be negative");
+        }
+    }
+
     private Mono<String> getUserName() {
         return ReactiveSecurityContextHolder.getContext().map(SecurityContext::getAuthentication)
             .map(Principal::getName);
@@ -0,0 +1,37 @@
+package run.halo.sticker.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.lang.Nullable;
+import run.halo.app.extension.ExtensionUtil;
+import run.halo.sticker.model.Sticker;
+
+/**
+ * Published when a {@link Sticker} is added, updated or deleted.
+ *
+ * <p>Listeners are invoked synchronously on the thread that wrote the extension, so they must
+ * only do cheap in-memory work such as cache invalidation.
+ */
+@Getter
+public class StickerChangedEvent extends ApplicationEvent {
+
+    @Nullable
+    private final Sticker oldSticker;
+
+    @Nullable
+    private final Sticker sticker;
+
+    public StickerChangedEvent(Object source, @Nullable Sticker oldSticker,
+        @Nullable Sticker sticker) {
+        super(source);
+        this.oldSticker = oldSticker;
+        this.sticker = sticker;
+    }
+
+    /**
+     * Whether the sticker is gone or being deleted after this change.
+     */
+    public boolean isRemoved() {
+        return sticker == null || ExtensionUtil.isDeleted(sticker);
+    }
+}
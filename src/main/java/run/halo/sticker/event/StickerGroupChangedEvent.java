@@ -0,0 +1,36 @@
+package run.halo.sticker.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.lang.Nullable;
+import run.halo.app.extension.ExtensionUtil;
+import run.halo.sticker.model.StickerGroup;
+
+/**
+ * Published when a {@link StickerGroup} is added, updated or deleted.
+ *
+ * @see StickerChangedEvent
+ */
+@Getter
+public class StickerGroupChangedEvent extends ApplicationEvent {
+
+    @Nullable
+    private final StickerGroup oldGroup;
+
+    @Nullable
+    private final StickerGroup group;
+
+    public StickerGroupChangedEvent(Object source, @Nullable StickerGroup oldGroup,
+        @Nullable StickerGroup group) {
+        super(source);
+        this.oldGroup = oldGroup;
+        this.group = group;
+    }
+
+    /**
+     * Whether the group is gone or being deleted after this change.
+     */
+    public boolean isRemoved() {
+        return group == null || ExtensionUtil.isDeleted(group);
+    }
+}
@@ -0,0 +1,55 @@
+package run.halo.sticker.infra;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.core.extension.attachment.Attachment;
+import run.halo.app.core.extension.service.AttachmentService;
+import run.halo.app.infra.ExternalUrlSupplier;
+
+/**
+ * Reads the content of an attachment through its permalink, whatever storage policy it uses.
+ *
+ * <p>Relative permalinks of the local policy are resolved against the external URL of the
+ * site. The content is streamed and never buffered here.
+ */
+@Component
+@RequiredArgsConstructor
+public class AttachmentContentReader {
+
+    private final AttachmentService attachmentService;
+    private final ExternalUrlSupplier externalUrlSupplier;
+    private final WebClient webClient = WebClient.create();
+
+    public Flux<DataBuffer> read(Attachment attachment) {
+        return attachmentService.getPermalink(attachment)
+            .switchIfEmpty(Mono.error(() -> new IllegalStateException(
+                "Permalink of attachment " + attachment.getMetadata().getName()
+                    + " is not available")))
+            .flatMap(this::toAbsolute)
+            .flatMapMany(uri -> webClient.get()
+                .uri(uri)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class));
+    }
+
+    private Mono<URI> toAbsolute(URI permalink) {
+        if (permalink.isAbsolute()) {
+            return Mono.just(permalink);
+        }
+        return Mono.fromCallable(() -> {
+            var externalUrl = externalUrlSupplier.getRaw();
+            var base = externalUrl != null ? externalUrl.toURI() : externalUrlSupplier.get();
+            if (!base.isAbsolute()) {
+                throw new IllegalStateException("Cannot resolve relative permalink " + permalink
+                    + " without an absolute external URL");
+            }
+            return base.resolve(permalink);
+        }).onErrorMap(URISyntaxException.class, IllegalStateException::new);
+    }
+}
@@ -0,0 +1,163 @@
+package run.halo.sticker.infra;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+
+/**
+ * A blocking {@link InputStream} over a publisher of {@link DataBuffer}s.
+ *
+ * <p>At most {@code prefetch} buffers are requested ahead of the reader, so memory use stays
+ * bounded no matter how large the source is. Consumed buffers are released as soon as they are
+ * read, and closing the stream cancels the source and releases anything still queued.
+ *
+ * <p>Reads block until data arrives and therefore must not happen on a non-blocking thread.
+ */
+public class DataBufferInputStream extends InputStream {
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+    private final SourceSubscriber subscriber;
+
+    private DataBuffer current;
+
+    private boolean done;
+
+    private volatile boolean closed;
+
+    public DataBufferInputStream(Publisher<DataBuffer> source, int prefetch) {
+        this.subscriber = new SourceSubscriber(prefetch);
+        Flux.from(source).subscribe(subscriber);
+    }
+
+    @Override
+    public int read() throws IOException {
+        var buffer = currentBuffer();
+        if (buffer == null) {
+            return -1;
+        }
+        return buffer.read() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        var buffer = currentBuffer();
+        if (buffer == null) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.readableByteCount());
+        buffer.read(bytes, off, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.readableByteCount();
+    }
+
+    private DataBuffer currentBuffer() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (current == null || current.readableByteCount() == 0) {
+            if (current != null) {
+                DataBufferUtils.release(current);
+                current = null;
+                subscriber.request(1);
+            }
+            if (done) {
+                return null;
+            }
+            Object next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (next == END) {
+                done = true;
+                return null;
+            }
+            if (next instanceof Throwable error) {
+                done = true;
+                throw new IOException(error);
+            }
+            current = (DataBuffer) next;
+        }
+        return current;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        subscriber.dispose();
+        if (current != null) {
+            DataBufferUtils.release(current);
+            current = null;
+        }
+        drain();
+    }
+
+    private void drain() {
+        Object next;
+        while ((next = queue.poll()) != null) {
+            if (next instanceof DataBuffer buffer) {
+                DataBufferUtils.release(buffer);
+            }
+        }
+    }
+
+    private class SourceSubscriber extends BaseSubscriber<DataBuffer> {
+
+        private final int prefetch;
+
+        SourceSubscriber(int prefetch) {
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            subscription.request(prefetch);
+        }
+
+        @Override
+        protected void hookOnNext(DataBuffer buffer) {
+            if (closed) {
+                DataBufferUtils.release(buffer);
+                return;
+            }
+            queue.add(buffer);
+            if (closed) {
+                // closed concurrently, the reader will never take it
+                drain();
+            }
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            queue.add(END);
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            queue.add(throwable);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package run.halo.sticker.infra;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A size-bounded file cache in a local directory, evicting least recently used entries.
+ *
+ * <p>Keys are used as file names, so callers must only use safe characters. Files are written
+ * to a temporary name first and then moved into place, so readers never see a partial file.
+ * Entries already present in the directory are picked up on construction, oldest first, and
+ * temporary files left behind by an interrupted write are deleted.
+ */
+@Slf4j
+public class DiskLruCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    public DiskLruCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(Files::isRegularFile)
+                    .filter(file -> {
+                        if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                            deleteQuietly(file);
+                            return false;
+                        }
+                        return true;
+                    })
+                    .sorted(Comparator.comparingLong(DiskLruCache::lastModified))
+                    .forEach(file -> {
+                        var size = size(file);
+                        entries.put(file.getFileName().toString(), size);
+                        totalBytes += size;
+                    });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to initialize cache directory " + directory, e);
+        }
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    /**
+     * Gets the cached file of the given key and marks it as recently used.
+     */
+    public synchronized Optional<Path> get(String key) {
+        if (entries.get(key) == null) {
+            return Optional.empty();
+        }
+        var file = directory.resolve(key);
+        if (!Files.exists(file)) {
+            remove(key);
+            return Optional.empty();
+        }
+        return Optional.of(file);
+    }
+
+    /**
+     * Writes the content under the given key, evicting old entries if the cache is full.
+     *
+     * @return the cached file
+     */
+    public Path put(String key, byte[] content) throws IOException {
+        var file = directory.resolve(key);
+        var tempFile = directory.resolve(UUID.randomUUID() + TEMP_SUFFIX);
+        Files.write(tempFile, content);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            var previous = entries.put(key, (long) content.length);
+            totalBytes += content.length - (previous == null ? 0 : previous);
+            evict();
+        }
+        return file;
+    }
+
+    public synchronized void remove(String key) {
+        var size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        deleteQuietly(directory.resolve(key));
+    }
+
+    private void evict() {
+        var iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            var eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            deleteQuietly(directory.resolve(eldest.getKey()));
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached file {}", file, e);
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package run.halo.sticker.infra;
+
+import static run.halo.app.extension.ExtensionUtil.isDeleted;
+import static run.halo.app.extension.index.query.QueryFactory.and;
+import static run.halo.app.extension.index.query.QueryFactory.equal;
+import static run.halo.app.extension.index.query.QueryFactory.greaterThan;
+import static run.halo.app.extension.index.query.QueryFactory.or;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.core.extension.attachment.Attachment;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.PageRequestImpl;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+import run.halo.sticker.model.Sticker;
+
+/**
+ * Deletes attachments in the sticker attachment group that no sticker refers to, such as files
+ * left behind when saving the sticker failed after the upload.
+ *
+ * <p>Each run checks a single page of attachments and the next run continues after the last
+ * attachment it saw in {@code (creationTimestamp, name)} order, wrapping around at the end.
+ * Unlike a page number, this position does not shift when attachments before it are deleted.
+ * Checks are spaced out so the sweep never competes with foreground traffic, and attachments
+ * younger than the grace period are left alone since their sticker may still be on its way.
+ */
+@Slf4j
+@Component
+public class OrphanAttachmentSweeper implements InitializingBean, DisposableBean {
+
+    private static final String STICKER_ATTACHMENT_GROUP = "sticker-group";
+    private static final Duration INITIAL_DELAY = Duration.ofMinutes(5);
+    private static final Duration SWEEP_INTERVAL = Duration.ofMinutes(10);
+    private static final Duration CHECK_INTERVAL = Duration.ofMillis(100);
+    private static final int PAGE_SIZE = 100;
+    private static final int DEFAULT_GRACE_PERIOD_HOURS = 24;
+    private static final String CREATION_TIMESTAMP = "metadata.creationTimestamp";
+
+    private final ReactiveExtensionClient client;
+    private final ReactiveSettingFetcher settingFetcher;
+    private final StickerMetrics metrics;
+
+    /**
+     * The last attachment checked, or null to start from the oldest one.
+     */
+    private volatile SweepPosition lastSeen;
+
+    private Disposable sweeping;
+
+    public OrphanAttachmentSweeper(ReactiveExtensionClient client,
+        ReactiveSettingFetcher settingFetcher, StickerMetrics metrics) {
+        this.client = client;
+        this.settingFetcher = settingFetcher;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        sweeping = Flux.interval(INITIAL_DELAY, SWEEP_INTERVAL)
+            .onBackpressureDrop()
+            .concatMap(tick -> fetchGracePeriod()
+                .flatMap(this::sweepPage)
+                .onErrorResume(e -> {
+                    log.warn("Failed to sweep orphan sticker attachments", e);
+                    return Mono.empty();
+                }), 0)
+            .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        if (sweeping != null) {
+            sweeping.dispose();
+        }
+    }
+
+    /**
+     * Gets the grace period, or empty if sweeping is disabled.
+     */
+    private Mono<Duration> fetchGracePeriod() {
+        return settingFetcher.fetch(StickerSetting.Advanced.GROUP, StickerSetting.Advanced.class)
+            .defaultIfEmpty(new StickerSetting.Advanced())
+            .filter(setting -> !Boolean.FALSE.equals(setting.getOrphanSweepEnabled()))
+            .map(setting -> {
+                var hours = setting.getOrphanGracePeriodHours();
+                return Duration.ofHours(hours == null || hours < 1
+                    ? DEFAULT_GRACE_PERIOD_HOURS : hours);
+            });
+    }
+
+    private Mono<Void> sweepPage(Duration gracePeriod) {
+        var builder = ListOptions.builder()
+            .andQuery(equal("spec.groupName", STICKER_ATTACHMENT_GROUP));
+        var position = lastSeen;
+        if (position != null) {
+            // compared as index keys, the same way the sort below orders them
+            builder.andQuery(or(greaterThan(CREATION_TIMESTAMP, position.creationTimestamp()),
+                and(equal(CREATION_TIMESTAMP, position.creationTimestamp()),
+                    greaterThan("metadata.name", position.name()))));
+        }
+        var pageRequest = PageRequestImpl.of(1, PAGE_SIZE,
+            Sort.by(CREATION_TIMESTAMP, "metadata.name"));
+        return client.listBy(Attachment.class, builder.build(), pageRequest)
+            .flatMap(result -> {
+                var items = result.getItems();
+                lastSeen = items.size() < PAGE_SIZE ? null
+                    : SweepPosition.of(items.get(items.size() - 1));
+                var cutoff = Instant.now().minus(gracePeriod);
+                var deleted = new AtomicInteger();
+                return Flux.fromIterable(items)
+                    .delayElements(CHECK_INTERVAL)
+                    .doOnNext(attachment -> metrics.orphanScanned())
+                    .filter(attachment -> !isDeleted(attachment))
+                    .filter(attachment -> {
+                        var created = attachment.getMetadata().getCreationTimestamp();
+                        return created != null && created.isBefore(cutoff);
+                    })
+                    .concatMap(this::deleteIfOrphaned)
+                    .doOnNext(attachment -> deleted.incrementAndGet())
+                    .then(Mono.fromRunnable(() -> log.info(
+                        "Checked {} sticker attachments, deleted {} orphans", items.size(),
+                        deleted.get())));
+            });
+    }
+
+    private Mono<Attachment> deleteIfOrphaned(Attachment attachment) {
+        var attachmentName = attachment.getMetadata().getName();
+        var listOptions = ListOptions.builder()
+            .andQuery(equal("spec.attachmentName", attachmentName))
+            .build();
+        return client.listBy(Sticker.class, listOptions, PageRequestImpl.ofSize(1))
+            .filter(result -> result.getTotal() == 0)
+            .flatMap(result -> {
+                log.debug("Delete orphan sticker attachment({})", attachmentName);
+                var size = attachment.getSpec().getSize();
+                return client.delete(attachment)
+                    .doOnNext(deleted -> metrics.orphanDeleted(size == null ? 0L : size));
+            });
+    }
+
+    private record SweepPosition(String creationTimestamp, String name) {
+
+        static SweepPosition of(Attachment attachment) {
+            var metadata = attachment.getMetadata();
+            return new SweepPosition(String.valueOf(metadata.getCreationTimestamp()),
+                metadata.getName());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package run.halo.sticker.infra;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * Meters of the sticker plugin, all named {@code sticker.*} and registered on the global
+ * registry so that they show up next to the meters of Halo itself.
+ *
+ * <p>Meters are looked up by name and tags on every record, which the registry resolves from
+ * its own map, so tag values must come from small fixed sets. Every meter of the plugin is
+ * removed when the plugin is stopped, otherwise a restarted plugin would keep reporting the
+ * meters of its previous class loader.
+ */
+@Component
+public class StickerMetrics implements DisposableBean {
+
+    private static final String PREFIX = "sticker.";
+
+    private final MeterRegistry registry = Metrics.globalRegistry;
+
+    /**
+     * Records the latency of a sticker listing.
+     *
+     * @param shape the query shape, e.g. {@code page-group} or {@code cursor-keyword}
+     * @param duration the listing duration
+     */
+    public void recordList(String shape, Duration duration) {
+        Timer.builder(PREFIX + "list")
+            .description("Latency of sticker listings by query shape")
+            .tag("shape", shape)
+            .register(registry)
+            .record(duration);
+    }
+
+    /**
+     * Records a stored sticker file.
+     *
+     * @param policyName the attachment policy name
+     * @param outcome {@code stored}, {@code deduplicated} or {@code failed}
+     * @param bytes the file size
+     * @param duration the time from the first byte received to the attachment being stored
+     */
+    public void recordUpload(String policyName, String outcome, long bytes, Duration duration) {
+        Timer.builder(PREFIX + "upload")
+            .description("Duration of storing sticker files by attachment policy")
+            .tag("policy", policyName)
+            .tag("outcome", outcome)
+            .register(registry)
+            .record(duration);
+        DistributionSummary.builder(PREFIX + "upload.size")
+            .description("Size of stored sticker files by attachment policy")
+            .baseUnit("bytes")
+            .tag("policy", policyName)
+            .tag("outcome", outcome)
+            .register(registry)
+            .record(bytes);
+    }
+
+    /**
+     * Records the optimization of an uploaded image.
+     *
+     * @param imageType the image type, e.g. {@code png}
+     * @param outcome {@code optimized}, {@code unchanged}, {@code timeout} or {@code failed}
+     * @param savedBytes the number of bytes saved
+     */
+    public void recordOptimization(String imageType, String outcome, long savedBytes) {
+        DistributionSummary.builder(PREFIX + "optimize.saved")
+            .description("Bytes saved by optimizing uploaded sticker images")
+            .baseUnit("bytes")
+            .tag("type", imageType)
+            .tag("outcome", outcome)
+            .register(registry)
+            .record(savedBytes);
+    }
+
+    /**
+     * Counts an upload rejected by the admission check.
+     *
+     * @param limit {@code file} or {@code pack} size, or {@code type}
+     */
+    public void uploadRejected(String limit) {
+        Counter.builder(PREFIX + "upload.rejected")
+            .description("Uploads rejected by the admission check")
+            .tag("limit", limit)
+            .register(registry)
+            .increment();
+    }
+
+    /**
+     * Counts a write retried after an optimistic locking conflict.
+     *
+     * @param operation the retried operation, e.g. {@code usage-flush}
+     */
+    public void optimisticLockRetry(String operation) {
+        Counter.builder(PREFIX + "optimistic.lock.retries")
+            .description("Extension writes retried after a version conflict")
+            .tag("operation", operation)
+            .register(registry)
+            .increment();
+    }
+
+    /**
+     * Records one reconciliation of a sticker.
+     *
+     * @param result {@code done} or {@code requeue}
+     * @param duration the reconciliation duration
+     */
+    public void recordReconcile(String result, Duration duration) {
+        Timer.builder(PREFIX + "reconcile")
+            .description("Duration of sticker reconciliations by result")
+            .tag("result", result)
+            .register(registry)
+            .record(duration);
+    }
+
+    /**
+     * Records the latency of one permalink resolution, including the wait in its batch.
+     *
+     * @param state the resolution state
+     * @param duration the time from scheduling to the resolution being ready
+     */
+    public void recordPermalinkResolution(String state, Duration duration) {
+        Timer.builder(PREFIX + "permalink.resolve")
+            .description("Latency of sticker permalink resolutions by outcome")
+            .tag("state", state)
+            .register(registry)
+            .record(duration);
+    }
+
+    /**
+     * Registers a gauge sampled from the given supplier.
+     */
+    public void gauge(String name, String description, Supplier<Number> value) {
+        Gauge.builder(PREFIX + name, value)
+            .description(description)
+            .register(registry);
+    }
+
+    /**
+     * Counts attachments checked by the orphan attachment sweeper.
+     */
+    public void orphanScanned() {
+        Counter.builder(PREFIX + "orphan.attachments.scanned")
+            .description("Attachments checked by the orphan attachment sweeper")
+            .register(registry)
+            .increment();
+    }
+
+    /**
+     * Counts an orphan attachment deleted by the sweeper.
+     *
+     * @param size the attachment size in bytes
+     */
+    public void orphanDeleted(long size) {
+        Counter.builder(PREFIX + "orphan.attachments.orphaned")
+            .description("Attachments deleted because no sticker refers to them")
+            .register(registry)
+            .increment();
+        Counter.builder(PREFIX + "orphan.attachments.reclaimed")
+            .description("Size of the attachments deleted by the orphan attachment sweeper")
+            .baseUnit("bytes")
+            .register(registry)
+            .increment(size);
+    }
+
+    @Override
+    public void destroy() {
+        registry.getMeters().stream()
+            .map(Meter::getId)
+            .filter(id -> id.getName().startsWith(PREFIX))
+            .forEach(registry::remove);
+    }
+}
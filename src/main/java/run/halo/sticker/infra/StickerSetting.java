@@ -1,5 +1,6 @@
 package run.halo.sticker.infra;
 
+import java.util.List;
 import lombok.Data;
 
 public class StickerSetting {
@@ -10,4 +11,32 @@ public class StickerSetting {
         String attachmentPolicyName;
     }
 
+    @Data
+    public static class Upload {
+        public static final String GROUP = "upload";
+        Integer batchConcurrency = 4;
+        Integer maxFileSizeKb = 2048;
+        List<PolicySizeLimit> policySizeLimits;
+        Integer maxConcurrentUploadsPerUser = 4;
+        Boolean optimizeEnabled = false;
+        Integer optimizeBudgetMillis = 2000;
+    }
+
+    /**
+     * File size limit of a single storage policy, overriding {@link Upload#maxFileSizeKb}.
+     */
+    @Data
+    public static class PolicySizeLimit {
+        String policyName;
+        Integer maxFileSizeKb;
+    }
+
+    @Data
+    public static class Advanced {
+        public static final String GROUP = "advanced";
+        Integer reconcilerWorkerCount = 1;
+        Boolean orphanSweepEnabled = true;
+        Integer orphanGracePeriodHours = 24;
+    }
+
 }
@@ -0,0 +1,25 @@
+package run.halo.sticker.infra;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import run.halo.app.theme.ReactivePostContentHandler;
+import run.halo.sticker.service.StickerShortcodeService;
+
+/**
+ * Expands sticker shortcodes in post content when a post is rendered by the theme.
+ */
+@Component
+@RequiredArgsConstructor
+public class StickerShortcodePostContentHandler implements ReactivePostContentHandler {
+
+    private final StickerShortcodeService shortcodeService;
+
+    @Override
+    public Mono<PostContentContext> handle(PostContentContext postContent) {
+        return Mono.fromSupplier(() -> {
+            postContent.setContent(shortcodeService.expand(postContent.getContent()));
+            return postContent;
+        });
+    }
+}
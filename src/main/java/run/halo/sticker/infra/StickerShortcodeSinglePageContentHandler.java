@@ -0,0 +1,25 @@
+package run.halo.sticker.infra;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import run.halo.app.theme.ReactiveSinglePageContentHandler;
+import run.halo.sticker.service.StickerShortcodeService;
+
+/**
+ * Expands sticker shortcodes in single page content when a page is rendered by the theme.
+ */
+@Component
+@RequiredArgsConstructor
+public class StickerShortcodeSinglePageContentHandler implements ReactiveSinglePageContentHandler {
+
+    private final StickerShortcodeService shortcodeService;
+
+    @Override
+    public Mono<SinglePageContentContext> handle(SinglePageContentContext pageContent) {
+        return Mono.fromSupplier(() -> {
+            pageContent.setContent(shortcodeService.expand(pageContent.getContent()));
+            return pageContent;
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package run.halo.sticker.infra;
+
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import run.halo.app.extension.Extension;
+import run.halo.app.extension.GroupVersionKind;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.extension.Watcher;
+import run.halo.app.infra.utils.JsonUtils;
+import run.halo.sticker.event.StickerChangedEvent;
+import run.halo.sticker.event.StickerGroupChangedEvent;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.model.StickerGroup;
+
+/**
+ * Watches {@link Sticker} and {@link StickerGroup} changes on the extension client and
+ * republishes them as {@link StickerChangedEvent} and {@link StickerGroupChangedEvent} so that
+ * in-memory caches of this plugin can be invalidated without polling the extension store.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StickerWatcher implements Watcher, InitializingBean, DisposableBean {
+
+    private static final GroupVersionKind STICKER_GVK =
+        GroupVersionKind.fromExtension(Sticker.class);
+    private static final GroupVersionKind STICKER_GROUP_GVK =
+        GroupVersionKind.fromExtension(StickerGroup.class);
+
+    private final ReactiveExtensionClient client;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile boolean disposed = false;
+    private Runnable disposeHook;
+
+    @Override
+    public void afterPropertiesSet() {
+        client.watch(this);
+    }
+
+    @Override
+    public void destroy() {
+        dispose();
+    }
+
+    @Override
+    public void onAdd(Extension extension) {
+        publish(null, extension);
+    }
+
+    @Override
+    public void onUpdate(Extension oldExtension, Extension newExtension) {
+        publish(oldExtension, newExtension);
+    }
+
+    @Override
+    public void onDelete(Extension extension) {
+        publish(extension, null);
+    }
+
+    private void publish(Extension oldExtension, Extension newExtension) {
+        if (disposed) {
+            return;
+        }
+        var gvk = (newExtension != null ? newExtension : oldExtension).groupVersionKind();
+        try {
+            if (STICKER_GVK.equals(gvk)) {
+                eventPublisher.publishEvent(new StickerChangedEvent(this,
+                    convert(oldExtension, Sticker.class).orElse(null),
+                    convert(newExtension, Sticker.class).orElse(null)));
+            } else if (STICKER_GROUP_GVK.equals(gvk)) {
+                eventPublisher.publishEvent(new StickerGroupChangedEvent(this,
+                    convert(oldExtension, StickerGroup.class).orElse(null),
+                    convert(newExtension, StickerGroup.class).orElse(null)));
+            }
+        } catch (RuntimeException e) {
+            // never break the write path of the extension client
+            log.warn("Failed to publish change event for {}", gvk, e);
+        }
+    }
+
+    private static <E extends Extension> Optional<E> convert(Extension extension, Class<E> type) {
+        if (extension == null) {
+            return Optional.empty();
+        }
+        if (type.isInstance(extension)) {
+            return Optional.of(type.cast(extension));
+        }
+        return Optional.of(JsonUtils.mapper().convertValue(extension, type));
+    }
+
+    @Override
+    public void registerDisposeHook(Runnable dispose) {
+        this.disposeHook = dispose;
+    }
+
+    @Override
+    public void dispose() {
+        if (disposed) {
+            return;
+        }
+        disposed = true;
+        if (disposeHook != null) {
+            disposeHook.run();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposed;
+    }
+}
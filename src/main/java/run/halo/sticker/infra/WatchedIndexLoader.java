@@ -0,0 +1,83 @@
+package run.halo.sticker.infra;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+/**
+ * Loads an in-memory index from the extension store while watch events already keep it up to
+ * date.
+ *
+ * <p>Beans are created before {@code StickerPlugin#start} registers the schemes of the plugin,
+ * so the first listing usually fails. It is retried with backoff until it succeeds, and the
+ * index reports itself ready only then. Items changed by a watch event before that are
+ * remembered, so that a stale listing neither overwrites nor adds them back.
+ */
+@Slf4j
+public class WatchedIndexLoader {
+
+    private static final Duration MIN_BACKOFF = Duration.ofMillis(500);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+
+    private final String indexName;
+
+    private final Set<String> changedWhileLoading = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean ready = false;
+
+    private Disposable loading;
+
+    public WatchedIndexLoader(String indexName) {
+        this.indexName = indexName;
+    }
+
+    /**
+     * Subscribes to the listing, resubscribing to it from the start after a failure.
+     *
+     * @param listing the listing, which indexes every item it emits
+     */
+    public void load(Flux<?> listing) {
+        loading = listing
+            .retryWhen(Retry.backoff(Long.MAX_VALUE, MIN_BACKOFF)
+                .maxBackoff(MAX_BACKOFF)
+                .doBeforeRetry(signal -> log.debug("Failed to load {}, retrying: {}", indexName,
+                    signal.failure().getMessage())))
+            .subscribe(null, error -> log.warn("Failed to load {}", indexName, error), () -> {
+                ready = true;
+                changedWhileLoading.clear();
+                log.debug("Loaded {}", indexName);
+            });
+    }
+
+    public void dispose() {
+        if (loading != null) {
+            loading.dispose();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Records that a watch event added, updated or removed the item, to be called while holding
+     * the index lock.
+     */
+    public void changed(String key) {
+        if (!ready) {
+            changedWhileLoading.add(key);
+        }
+    }
+
+    /**
+     * Whether the listed version of an item is stale because a watch event changed the item
+     * since loading started.
+     */
+    public boolean isStale(String key) {
+        return changedWhileLoading.contains(key);
+    }
+}
@@ -39,11 +39,38 @@ public class Sticker extends AbstractExtension {
         private String url;
 
         private Integer sequence;
+
+        /**
+         * SHA-256 of the sticker file, used to reuse the attachment of identical uploads.
+         */
+        private String contentHash;
+
+        /**
+         * Code that {@code :shortcode:} references in rendered content expand to. Stickers
+         * without one are never expanded, and codes without a letter or shorter than three
+         * characters are ignored, so that times or ratios in text stay as they are.
+         */
+        private String shortcode;
     }
 
     @Data
     public static class StickerStatus {
 
         private Boolean isDelete;
+
+        /**
+         * Name of the attachment that {@code spec.url} was resolved from.
+         */
+        private String attachmentName;
+
+        /**
+         * Version of the attachment that {@code spec.url} was resolved from.
+         */
+        private Long attachmentVersion;
+
+        /**
+         * Thumbnail of the sticker for pickers and lists, versioned by the attachment.
+         */
+        private String thumbUrl;
     }
 }
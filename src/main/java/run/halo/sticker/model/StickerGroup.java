@@ -52,6 +52,21 @@ public class StickerGroup extends AbstractExtension {
     @Data
     public static class StickerGroupStatus {
         private Boolean isDelete;
+
+        /**
+         * Set to {@code Deleting} while the stickers of a deleted group are being removed.
+         */
+        private String phase;
+
+        /**
+         * Number of stickers deleted so far by the cascade delete.
+         */
+        private Integer deletedStickers;
+
+        /**
+         * Number of stickers still in the group, including those being deleted.
+         */
+        private Integer remainingStickers;
     }
 }
 
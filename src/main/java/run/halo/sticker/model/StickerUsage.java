@@ -0,0 +1,51 @@
+package run.halo.sticker.model;
+
+import static io.swagger.v3.oas.annotations.media.Schema.RequiredMode.REQUIRED;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import run.halo.app.core.extension.attachment.Constant;
+import run.halo.app.extension.AbstractExtension;
+import run.halo.app.extension.GVK;
+
+/**
+ * How often and how recently a user inserted each sticker, one extension per user.
+ */
+@Data
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+@GVK(group = Constant.GROUP,
+    version = Constant.VERSION,
+    kind = "StickerUsage",
+    singular = "stickerUsage",
+    plural = "stickerUsages")
+public class StickerUsage extends AbstractExtension {
+
+    @Schema(requiredMode = REQUIRED)
+    private StickerUsageSpec spec = new StickerUsageSpec();
+
+    @Data
+    public static class StickerUsageSpec {
+
+        @Schema(requiredMode = REQUIRED)
+        private String username;
+
+        private List<UsageEntry> entries = new ArrayList<>();
+    }
+
+    @Data
+    public static class UsageEntry {
+
+        @Schema(requiredMode = REQUIRED)
+        private String stickerName;
+
+        private long count;
+
+        private Instant lastUsedAt;
+    }
+}
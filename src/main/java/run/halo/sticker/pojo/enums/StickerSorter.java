@@ -7,9 +7,24 @@ import org.springframework.util.comparator.Comparators;
 import run.halo.sticker.model.Sticker;
 
 public enum StickerSorter {
-    DISPLAY_NAME,
-    SEQUENCE,
-    GROUP_NAME;
+    DISPLAY_NAME("spec.displayName"),
+    SEQUENCE("spec.sequence"),
+    GROUP_NAME("spec.groupName");
+
+    private final String indexField;
+
+    StickerSorter(String indexField) {
+        this.indexField = indexField;
+    }
+
+    /**
+     * Gets the indexed field the extension store sorts by for this sorter.
+     *
+     * @return an index name registered in {@code StickerPlugin}
+     */
+    public String indexField() {
+        return indexField;
+    }
 
     static final Function<Sticker, String> name = sticker -> sticker.getMetadata().getName();
 
@@ -0,0 +1,20 @@
+package run.halo.sticker.pojo.query;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Index keys of ordinal fields such as {@code spec.sequence} and {@code spec.priority}.
+ *
+ * <p>Index values are compared as strings, so ordinals are zero-padded to the width of the
+ * largest int to sort numerically. Negative ordinals are rejected where they are written and
+ * indexed as {@code 0} should one get into the store anyway.
+ */
+public final class OrdinalIndexKey {
+
+    private OrdinalIndexKey() {
+    }
+
+    public static String of(@Nullable Integer ordinal) {
+        return String.format("%010d", ordinal == null || ordinal < 0 ? 0 : ordinal);
+    }
+}
@@ -0,0 +1,51 @@
+package run.halo.sticker.pojo.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.web.server.ServerWebInputException;
+import run.halo.sticker.model.Sticker;
+
+/**
+ * Position after the last sticker of a page in {@code (spec.sequence, metadata.name)} order,
+ * passed to clients as an opaque token.
+ *
+ * <p>A missing sequence counts as {@code 0}, the same as in the {@code spec.sequence} index.
+ *
+ * @param sequence sequence of the last sticker
+ * @param name name of the last sticker
+ */
+public record StickerCursor(int sequence, String name) {
+
+    private static final char SEPARATOR = ':';
+
+    public static StickerCursor after(Sticker sticker) {
+        var sequence = sticker.getSpec().getSequence();
+        return new StickerCursor(sequence == null ? 0 : sequence,
+            sticker.getMetadata().getName());
+    }
+
+    public static StickerCursor decode(String token) {
+        try {
+            var decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            var sequence = StringUtils.substringBefore(decoded, SEPARATOR);
+            var name = StringUtils.substringAfter(decoded, SEPARATOR);
+            if (StringUtils.isEmpty(name)) {
+                throw new IllegalArgumentException("Missing sticker name");
+            }
+            var parsed = Integer.parseInt(sequence);
+            if (parsed < 0) {
+                throw new IllegalArgumentException("Negative sequence");
+            }
+            return new StickerCursor(parsed, name);
+        } catch (IllegalArgumentException e) {
+            throw new ServerWebInputException("Invalid cursor: " + token);
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString((sequence + String.valueOf(SEPARATOR) + name)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,50 @@
+package run.halo.sticker.pojo.query;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.index.query.QueryFactory;
+import run.halo.app.extension.router.SortableRequest;
+
+public class StickerGroupQuery extends SortableRequest {
+
+    public StickerGroupQuery(ServerRequest request) {
+        super(request.exchange());
+    }
+
+    /**
+     * Builds list options for the groups visible to the given user, that is the groups owned by
+     * the user and all public groups.
+     *
+     * @param username the current username
+     * @return list options backed by the {@code spec.owner} and {@code spec.isPublic} indexes
+     */
+    public ListOptions toListOptions(String username) {
+        return ListOptions.builder(super.toListOptions())
+            .andQuery(QueryFactory.or(
+                QueryFactory.equal("spec.owner", username),
+                QueryFactory.equal("spec.isPublic", "true")
+            ))
+            .build();
+    }
+
+    @Override
+    public Sort getSort() {
+        var sort = super.getSort();
+        if (sort.isUnsorted()) {
+            return Sort.by("spec.priority", "metadata.name");
+        }
+        var orders = sort.stream()
+            .map(order -> {
+                if ("creationTimestamp".equals(order.getProperty())) {
+                    return order.withProperty("metadata.creationTimestamp");
+                }
+                if ("priority".equals(order.getProperty())) {
+                    return order.withProperty("spec.priority");
+                }
+                return order;
+            })
+            .toList();
+        return Sort.by(orders);
+    }
+}
@@ -1,14 +1,19 @@
 package run.halo.sticker.pojo.query;
 
 import static org.springdoc.core.fn.builders.parameter.Builder.parameterBuilder;
-import static run.halo.app.extension.router.QueryParamBuildUtil.sortParameter;
 
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Optional;
+import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.springdoc.core.fn.builders.operation.Builder;
 import org.springframework.data.domain.Sort;
+import org.springframework.lang.Nullable;
 import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.server.ServerWebInputException;
 import run.halo.app.extension.ListOptions;
 import run.halo.app.extension.index.query.QueryFactory;
 import run.halo.app.extension.router.SortableRequest;
@@ -16,47 +21,125 @@ import run.halo.sticker.pojo.enums.StickerSorter;
 
 public class StickerQuery extends SortableRequest {
 
+    private static final Set<String> SORTABLE_FIELDS = Set.of("metadata.name",
+        "metadata.creationTimestamp", "spec.displayName", "spec.sequence", "spec.groupName");
+    private static final int DEFAULT_CURSOR_LIMIT = 50;
+    private static final int MAX_CURSOR_LIMIT = 200;
+
     public StickerQuery(ServerRequest request) {
         super(request.exchange());
     }
 
-    @Override
-    public ListOptions toListOptions() {
-        var builder = ListOptions.builder(super.toListOptions());
+    /**
+     * Whether the stickers are requested by cursor rather than by page number. An empty
+     * {@code cursor} parameter asks for the first page.
+     */
+    public boolean isCursorMode() {
+        return queryParams.containsKey("cursor");
+    }
 
-        Optional.ofNullable(queryParams.getFirst("keyword"))
+    @Nullable
+    public StickerCursor getCursor() {
+        return Optional.ofNullable(queryParams.getFirst("cursor"))
             .filter(StringUtils::isNotBlank)
+            .map(StickerCursor::decode)
+            .orElse(null);
+    }
+
+    public int getLimit() {
+        var limit = NumberUtils.toInt(queryParams.getFirst("limit"), DEFAULT_CURSOR_LIMIT);
+        return Math.min(Math.max(limit, 1), MAX_CURSOR_LIMIT);
+    }
+
+    @Nullable
+    public String getGroup() {
+        return StringUtils.defaultIfBlank(queryParams.getFirst("group"), null);
+    }
+
+    @Nullable
+    public String getKeyword() {
+        return StringUtils.defaultIfBlank(queryParams.getFirst("keyword"), null);
+    }
+
+    @Override
+    public ListOptions toListOptions() {
+        var builder = ListOptions.builder(toListOptionsWithoutKeyword());
+        Optional.ofNullable(getKeyword())
             .ifPresent(keyword -> builder.andQuery(QueryFactory.or(
-                QueryFactory.contains("spec.title", keyword),
+                QueryFactory.contains("spec.displayName", keyword),
                 QueryFactory.contains("spec.description", keyword)
             )));
+        return builder.build();
+    }
 
-        Optional.ofNullable(queryParams.getFirst("group"))
-            .filter(StringUtils::isNotBlank)
+    /**
+     * Builds list options that match the keyword by the names found in the search index.
+     *
+     * @param keywordMatches names of the stickers matching {@link #getKeyword()}, must not be
+     * empty
+     */
+    public ListOptions toListOptions(Collection<String> keywordMatches) {
+        return ListOptions.builder(toListOptionsWithoutKeyword())
+            .andQuery(QueryFactory.in("metadata.name", keywordMatches))
+            .build();
+    }
+
+    private ListOptions toListOptionsWithoutKeyword() {
+        var builder = ListOptions.builder(super.toListOptions());
+
+        Optional.ofNullable(getGroup())
             .ifPresent(group -> builder.andQuery(QueryFactory.equal("spec.groupName", group)));
 
         return builder.build();
     }
 
+    /**
+     * Maps the requested sort onto indexed fields, so that sorting happens in the index rather
+     * than on the whole result in memory. {@code sort} accepts {@link StickerSorter} values and
+     * {@code creationTimestamp}; {@code sortOrder} sets the direction of all orders. Stickers
+     * are ordered by sequence by default and by name to break ties.
+     */
     @Override
     public Sort getSort() {
-        var sort = super.getSort();
-        var orders = sort.stream()
-            .map(order -> {
-                if ("creationTimestamp".equals(order.getProperty())) {
-                    return order.withProperty("metadata.creationTimestamp");
-                }
-                // Add more custom sorting logic if needed
-                return order;
-            })
-            .toList();
+        var ascending = Optional.ofNullable(queryParams.getFirst("sortOrder"))
+            .filter(StringUtils::isNotBlank)
+            .map(Boolean::parseBoolean)
+            .orElse(null);
+        var orders = new ArrayList<Sort.Order>();
+        for (var order : super.getSort()) {
+            var mapped = order.withProperty(toIndexField(order.getProperty()));
+            if (ascending != null) {
+                mapped = mapped.with(ascending ? Sort.Direction.ASC : Sort.Direction.DESC);
+            }
+            orders.add(mapped);
+        }
+        if (orders.isEmpty()) {
+            orders.add(new Sort.Order(Boolean.FALSE.equals(ascending)
+                ? Sort.Direction.DESC : Sort.Direction.ASC, StickerSorter.SEQUENCE.indexField()));
+        }
+        if (orders.stream().noneMatch(order -> "metadata.name".equals(order.getProperty()))) {
+            orders.add(Sort.Order.asc("metadata.name"));
+        }
         return Sort.by(orders);
     }
 
+    private static String toIndexField(String property) {
+        if ("creationTimestamp".equals(property)) {
+            return "metadata.creationTimestamp";
+        }
+        var sorter = StickerSorter.convertFrom(property);
+        if (sorter != null) {
+            return sorter.indexField();
+        }
+        if (SORTABLE_FIELDS.contains(property)) {
+            return property;
+        }
+        throw new ServerWebInputException("Unsupported sort field: " + property);
+    }
+
     public static void buildParameters(Builder builder) {
         SortableRequest.buildParameters(builder);
-        builder.parameter(sortParameter())
-            .parameter(parameterBuilder()
+        builder.parameter(parameterBuilder()
                 .in(ParameterIn.QUERY)
                 .name("keyword")
                 .description("Photos filtered by keyword.")
@@ -70,14 +153,24 @@ public class StickerQuery extends SortableRequest {
                 .required(false))
             .parameter(parameterBuilder()
                 .in(ParameterIn.QUERY)
-                .name("sort")
-                .description("Sticker sorting field")
-                .implementation(StickerSorter.class)
+                .name("cursor")
+                .description("Continuation token of a cursor listing, empty for the first "
+                    + "page. Stickers are then ordered by sequence and page and size are "
+                    + "ignored.")
+                .implementation(String.class)
+                .required(false))
+            .parameter(parameterBuilder()
+                .in(ParameterIn.QUERY)
+                .name("limit")
+                .description("Page size of a cursor listing, at most " + MAX_CURSOR_LIMIT)
+                .implementation(Integer.class)
                 .required(false))
             .parameter(parameterBuilder()
                 .in(ParameterIn.QUERY)
                 .name("sortOrder")
-                .description("Sorting order (true for ascending, false for descending)")
+                .description("Sorting order of all sort fields (true for ascending, false for "
+                    + "descending). Sort fields may be given as DISPLAY_NAME, SEQUENCE or "
+                    + "GROUP_NAME.")
                 .implementation(Boolean.class)
                 .required(false));
     }
@@ -0,0 +1,18 @@
+package run.halo.sticker.pojo.vo;
+
+import java.util.List;
+import org.springframework.lang.Nullable;
+
+/**
+ * A page of a keyset paginated listing.
+ *
+ * @param items items of this page
+ * @param nextCursor token to pass as {@code cursor} for the next page, {@code null} on the last
+ * page
+ */
+public record CursorListResult<T>(List<T> items, @Nullable String nextCursor) {
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
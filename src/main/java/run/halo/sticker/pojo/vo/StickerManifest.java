@@ -0,0 +1,20 @@
+package run.halo.sticker.pojo.vo;
+
+import java.util.List;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.model.StickerGroup;
+
+/**
+ * All sticker groups visible to a user together with their stickers, so that the editor picker
+ * can be populated with a single request.
+ *
+ * @param groups visible groups ordered by priority
+ */
+public record StickerManifest(List<GroupEntry> groups) {
+
+    /**
+     * A sticker group and its stickers ordered by sequence.
+     */
+    public record GroupEntry(StickerGroup group, List<Sticker> stickers) {
+    }
+}
@@ -0,0 +1,25 @@
+package run.halo.sticker.pojo.vo;
+
+import java.util.Map;
+import org.springframework.lang.Nullable;
+
+/**
+ * A sticker group composited into one image, so that the picker loads a group with a single
+ * image request and renders each sticker with CSS background offsets.
+ *
+ * @param hash content hash of the group the sheet was built from
+ * @param imageUrl URL of the sheet image, or {@code null} if the sheet has no tiles
+ * @param width sheet width in pixels
+ * @param height sheet height in pixels
+ * @param tiles sticker name to its area in the sheet, in sequence order. Stickers without a
+ * tile, such as animated GIFs, should be loaded individually.
+ */
+public record StickerSpriteSheet(String hash, @Nullable String imageUrl, int width, int height,
+                                 Map<String, Tile> tiles) {
+
+    /**
+     * The area of one sticker in the sheet.
+     */
+    public record Tile(int x, int y, int width, int height) {
+    }
+}
@@ -0,0 +1,16 @@
+package run.halo.sticker.pojo.vo;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The stickers a user inserted most recently and most often.
+ *
+ * @param recent most recently used first
+ * @param frequent most often used first
+ */
+public record StickerUsageSummary(List<Entry> recent, List<Entry> frequent) {
+
+    public record Entry(String stickerName, long count, Instant lastUsedAt) {
+    }
+}
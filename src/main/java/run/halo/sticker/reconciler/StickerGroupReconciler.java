@@ -0,0 +1,103 @@
+package run.halo.sticker.reconciler;
+
+import static run.halo.app.core.extension.attachment.Constant.FINALIZER_NAME;
+import static run.halo.app.extension.ExtensionUtil.addFinalizers;
+import static run.halo.app.extension.ExtensionUtil.isDeleted;
+import static run.halo.app.extension.ExtensionUtil.removeFinalizers;
+import static run.halo.app.extension.index.query.QueryFactory.equal;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import run.halo.app.extension.ExtensionClient;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.PageRequestImpl;
+import run.halo.app.extension.controller.Controller;
+import run.halo.app.extension.controller.ControllerBuilder;
+import run.halo.app.extension.controller.Reconciler;
+import run.halo.app.extension.controller.Reconciler.Request;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.model.StickerGroup;
+
+/**
+ * Deletes the stickers of a deleted group before the group itself goes away.
+ *
+ * <p>Stickers are deleted one page at a time with a pause in between, so deleting a large
+ * group does not flood the extension store. Each deleted sticker releases its attachment in
+ * {@link StickerReconciler}, and the group keeps its finalizer until no sticker refers to it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StickerGroupReconciler implements Reconciler<Request> {
+    private static final String PHASE_DELETING = "Deleting";
+    private static final int DELETE_BATCH_SIZE = 50;
+    private static final Duration DELETE_BATCH_INTERVAL = Duration.ofSeconds(1);
+
+    private final ExtensionClient client;
+
+    @Override
+    public Result reconcile(Request request) {
+        return client.fetch(StickerGroup.class, request.name()).map(group -> {
+            if (!isDeleted(group)) {
+                var finalizers = group.getMetadata().getFinalizers();
+                if (finalizers == null || !finalizers.contains(FINALIZER_NAME)) {
+                    addFinalizers(group.getMetadata(), Set.of(FINALIZER_NAME));
+                    client.update(group);
+                }
+                return Result.doNotRetry();
+            }
+            return deleteStickers(group);
+        }).orElseGet(Result::doNotRetry);
+    }
+
+    private Result deleteStickers(StickerGroup group) {
+        var groupName = group.getMetadata().getName();
+        var listOptions = ListOptions.builder()
+            .andQuery(equal("spec.groupName", groupName))
+            .build();
+        var page = client.listBy(Sticker.class, listOptions,
+            PageRequestImpl.ofSize(DELETE_BATCH_SIZE));
+        if (page.getTotal() == 0) {
+            log.info("All stickers of group({}) are deleted", groupName);
+            removeFinalizers(group.getMetadata(), Set.of(FINALIZER_NAME));
+            client.update(group);
+            return Result.doNotRetry();
+        }
+        var deleted = 0;
+        for (var sticker : page.getItems()) {
+            if (!isDeleted(sticker)) {
+                client.delete(sticker);
+                deleted++;
+            }
+        }
+        var status = group.getStatus();
+        if (status == null) {
+            status = new StickerGroup.StickerGroupStatus();
+            group.setStatus(status);
+        }
+        var remaining = (int) page.getTotal();
+        var totalDeleted = Objects.requireNonNullElse(status.getDeletedStickers(), 0) + deleted;
+        if (!PHASE_DELETING.equals(status.getPhase())
+            || !Objects.equals(status.getRemainingStickers(), remaining)
+            || !Objects.equals(status.getDeletedStickers(), totalDeleted)) {
+            status.setPhase(PHASE_DELETING);
+            status.setRemainingStickers(remaining);
+            status.setDeletedStickers(totalDeleted);
+            client.update(group);
+        }
+        log.debug("Deleted {} stickers of group({}), {} remaining", deleted, groupName,
+            remaining);
+        return Result.requeue(DELETE_BATCH_INTERVAL);
+    }
+
+    @Override
+    public Controller setupWith(ControllerBuilder builder) {
+        return builder
+            .extension(new StickerGroup())
+            .build();
+    }
+}
@@ -0,0 +1,247 @@
+package run.halo.sticker.reconciler;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.domain.Sort;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import run.halo.app.core.extension.attachment.Attachment;
+import run.halo.app.core.extension.service.AttachmentService;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.extension.index.query.QueryFactory;
+import run.halo.sticker.infra.StickerMetrics;
+
+/**
+ * Resolves attachment permalinks for {@link StickerReconciler} off the reconcile thread.
+ *
+ * <p>Requested attachment names are coalesced into small batches. Each batch fetches its
+ * attachments with a single indexed query and resolves the permalinks concurrently, each with a
+ * short timeout, so that one slow storage call can no longer stall a controller worker. The
+ * reconciler polls for the outcome and requeues itself until it is available.
+ */
+@Slf4j
+@Component
+public class StickerPermalinkResolver implements InitializingBean, DisposableBean {
+
+    private static final int BATCH_SIZE = 32;
+    private static final Duration BATCH_WINDOW = Duration.ofMillis(50);
+    private static final int CONCURRENCY = 8;
+    private static final Duration RESOLVE_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration RESOLUTION_TTL = Duration.ofMinutes(5);
+
+    private final ReactiveExtensionClient client;
+    private final AttachmentService attachmentService;
+    private final StickerMetrics metrics;
+
+    private final Object lock = new Object();
+
+    /**
+     * Scheduling time in nanoseconds by attachment name of the resolutions in progress.
+     */
+    private final ConcurrentMap<String, Long> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Resolutions waiting to be picked up by the reconciler, dropped if never polled.
+     */
+    private final Cache<String, Resolution> resolutions = CacheBuilder.newBuilder()
+        .expireAfterWrite(RESOLUTION_TTL)
+        .build();
+
+    /**
+     * Sink of the current batching pipeline, replaced whenever the pipeline terminates.
+     */
+    private Sinks.Many<String> requests;
+
+    private Disposable subscription;
+
+    private volatile boolean stopped = false;
+
+    public StickerPermalinkResolver(ReactiveExtensionClient client,
+        AttachmentService attachmentService, StickerMetrics metrics) {
+        this.client = client;
+        this.attachmentService = attachmentService;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // stickers waiting on a permalink are requeued by the reconciler until it is ready
+        metrics.gauge("permalink.pending", "Permalink resolutions in progress", pending::size);
+        metrics.gauge("permalink.ready", "Resolved permalinks not yet picked up by the "
+            + "reconciler", resolutions::size);
+        startPipeline();
+    }
+
+    @Override
+    public void destroy() {
+        stopped = true;
+        synchronized (lock) {
+            if (requests != null) {
+                requests.tryEmitComplete();
+            }
+            if (subscription != null) {
+                subscription.dispose();
+            }
+        }
+    }
+
+    private void startPipeline() {
+        synchronized (lock) {
+            if (stopped) {
+                return;
+            }
+            var sink = Sinks.many().unicast().<String>onBackpressureBuffer();
+            requests = sink;
+            // fair backpressure holds batches back while a slow batch is being resolved
+            // instead of failing when the buffer cannot be emitted
+            subscription = sink.asFlux()
+                .bufferTimeout(BATCH_SIZE, BATCH_WINDOW, true)
+                .concatMap(batch -> resolveAll(batch)
+                    .onErrorResume(e -> Flux.fromIterable(batch).map(Resolution::failed)))
+                .subscribe(this::complete, error -> {
+                    log.error("Sticker permalink resolver terminated unexpectedly, restarting",
+                        error);
+                    // resolutions lost with the pipeline are scheduled again on the next poll
+                    pending.clear();
+                    startPipeline();
+                });
+        }
+    }
+
+    private void complete(Resolution resolution) {
+        resolutions.put(resolution.attachmentName(), resolution);
+        var scheduledAt = pending.remove(resolution.attachmentName());
+        if (scheduledAt != null) {
+            metrics.recordPermalinkResolution(resolution.state().name().toLowerCase(
+                Locale.ROOT), Duration.ofNanos(System.nanoTime() - scheduledAt));
+        }
+    }
+
+    /**
+     * Takes the resolution of the given attachment if it is ready, otherwise schedules its
+     * resolution and returns empty.
+     *
+     * @param attachmentName the attachment name
+     * @return the resolution if ready
+     */
+    public Optional<Resolution> poll(String attachmentName) {
+        var resolution = resolutions.asMap().remove(attachmentName);
+        if (resolution != null) {
+            return Optional.of(resolution);
+        }
+        submit(attachmentName);
+        return Optional.empty();
+    }
+
+    private void submit(String attachmentName) {
+        if (pending.putIfAbsent(attachmentName, System.nanoTime()) != null) {
+            return;
+        }
+        Sinks.EmitResult result;
+        synchronized (lock) {
+            result = requests == null ? Sinks.EmitResult.FAIL_TERMINATED
+                : requests.tryEmitNext(attachmentName);
+        }
+        if (result.isFailure()) {
+            // the pipeline is terminated or restarting, resolve this one on its own
+            log.debug("Resolving permalink of attachment {} directly: {}", attachmentName,
+                result);
+            resolveAll(List.of(attachmentName))
+                .subscribe(this::complete, error -> pending.remove(attachmentName));
+        }
+    }
+
+    /**
+     * Resolves permalinks of the given attachments with one attachment query and a bounded
+     * number of concurrent storage calls.
+     *
+     * @param attachmentNames the attachment names
+     * @return a flux of one resolution per attachment name
+     */
+    public Flux<Resolution> resolveAll(Collection<String> attachmentNames) {
+        if (attachmentNames.isEmpty()) {
+            return Flux.empty();
+        }
+        var listOptions = ListOptions.builder()
+            .andQuery(QueryFactory.in("metadata.name", Set.copyOf(attachmentNames)))
+            .build();
+        return client.listAll(Attachment.class, listOptions, Sort.unsorted())
+            .collectMap(attachment -> attachment.getMetadata().getName())
+            .flatMapMany(attachments -> Flux.fromIterable(attachmentNames)
+                .flatMap(attachmentName -> resolve(attachmentName,
+                    attachments.get(attachmentName)), CONCURRENCY))
+            .onErrorResume(e -> {
+                log.warn("Failed to fetch attachments {}", attachmentNames, e);
+                return Flux.fromIterable(attachmentNames).map(Resolution::failed);
+            });
+    }
+
+    private Mono<Resolution> resolve(String attachmentName, @Nullable Attachment attachment) {
+        if (attachment == null) {
+            return Mono.just(Resolution.missing(attachmentName));
+        }
+        var version = attachment.getMetadata().getVersion();
+        return attachmentService.getPermalink(attachment)
+            .timeout(RESOLVE_TIMEOUT)
+            .map(permalink -> Resolution.resolved(attachmentName, version, permalink.toString()))
+            .switchIfEmpty(Mono.fromSupplier(() -> Resolution.failed(attachmentName)))
+            .onErrorResume(e -> {
+                log.warn("Failed to get permalink of attachment {}: {}", attachmentName,
+                    e.getMessage());
+                return Mono.just(Resolution.failed(attachmentName));
+            });
+    }
+
+    public enum State {
+        RESOLVED,
+        /**
+         * The attachment does not exist.
+         */
+        MISSING,
+        /**
+         * The permalink could not be resolved in time and should be retried.
+         */
+        FAILED
+    }
+
+    /**
+     * Outcome of a permalink resolution.
+     *
+     * @param attachmentName the attachment name
+     * @param state the resolution state
+     * @param attachmentVersion the attachment version the permalink was resolved from
+     * @param permalink the permalink if resolved
+     */
+    public record Resolution(String attachmentName, State state, @Nullable Long attachmentVersion,
+                             @Nullable String permalink) {
+
+        static Resolution resolved(String attachmentName, Long attachmentVersion,
+            String permalink) {
+            return new Resolution(attachmentName, State.RESOLVED, attachmentVersion, permalink);
+        }
+
+        static Resolution missing(String attachmentName) {
+            return new Resolution(attachmentName, State.MISSING, null, null);
+        }
+
+        static Resolution failed(String attachmentName) {
+            return new Resolution(attachmentName, State.FAILED, null, null);
+        }
+    }
+}
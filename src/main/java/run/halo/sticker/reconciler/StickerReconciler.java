@@ -4,77 +4,238 @@ import static run.halo.app.core.extension.attachment.Constant.FINALIZER_NAME;
 import static run.halo.app.extension.ExtensionUtil.addFinalizers;
 import static run.halo.app.extension.ExtensionUtil.isDeleted;
 import static run.halo.app.extension.ExtensionUtil.removeFinalizers;
+import static run.halo.app.extension.index.query.QueryFactory.equal;
 
-import java.net.URI;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
 import java.util.Set;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Component;
 import run.halo.app.core.extension.attachment.Attachment;
-import run.halo.app.core.extension.service.AttachmentService;
 import run.halo.app.extension.ExtensionClient;
+import run.halo.app.extension.ListOptions;
 import run.halo.app.extension.controller.Controller;
 import run.halo.app.extension.controller.ControllerBuilder;
 import run.halo.app.extension.controller.Reconciler;
 import run.halo.app.extension.controller.Reconciler.Request;
+import run.halo.app.plugin.SettingFetcher;
+import run.halo.sticker.infra.StickerMetrics;
+import run.halo.sticker.infra.StickerSetting;
 import run.halo.sticker.model.Sticker;
+import run.halo.sticker.service.StickerRenditionService;
 
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class StickerReconciler implements Reconciler<Request> {
+    private static final int DEFAULT_WORKER_COUNT = 1;
+    private static final Duration PERMALINK_RECHECK_DELAY = Duration.ofMillis(200);
+    /**
+     * Time a deleted sticker keeps its attachment, so that an upload which found the
+     * attachment by content hash just before the delete has created its sticker by the time
+     * references are counted.
+     */
+    private static final Duration ATTACHMENT_RELEASE_GRACE = Duration.ofSeconds(30);
+    private static final String STICKER_ATTACHMENT_GROUP = "sticker-group";
+    private static final String THUMBNAIL_URL_TEMPLATE =
+        "/apis/sticker.api.halo.run/v1alpha1/stickers/%s/thumbnail?size=%d&v=%s";
+
     private final ExtensionClient client;
-    private final AttachmentService attachmentService;
+    private final StickerPermalinkResolver permalinkResolver;
+    private final SettingFetcher settingFetcher;
+    private final StickerMetrics metrics;
 
 
     @Override
     public Result reconcile(Request request) {
-       client.fetch(Sticker.class, request.name()).ifPresent(sticker -> {
+        var start = System.nanoTime();
+        var result = doReconcile(request);
+        metrics.recordReconcile(result.reEnqueue() ? "requeue" : "done",
+            Duration.ofNanos(System.nanoTime() - start));
+        return result;
+    }
+
+    private Result doReconcile(Request request) {
+        return client.fetch(Sticker.class, request.name()).map(sticker -> {
+            var before = ReconcileState.of(sticker);
+            Result result;
             if (isDeleted(sticker)) {
-                removeFinalizers(sticker.getMetadata(), Set.of(FINALIZER_NAME));
+                var graceLeft = releaseGraceLeft(sticker);
+                if (graceLeft.isPositive()) {
+                    result = Result.requeue(graceLeft);
+                } else {
+                    releaseAttachment(sticker);
+                    removeFinalizers(sticker.getMetadata(), Set.of(FINALIZER_NAME));
+                    result = Result.doNotRetry();
+                }
+            } else {
+                addFinalizers(sticker.getMetadata(), Set.of(FINALIZER_NAME));
+                result = handleUploadSticker(sticker);
+            }
+            // every write fires another watch event, so only write real changes
+            if (!before.equals(ReconcileState.of(sticker))) {
                 client.update(sticker);
-                return;
             }
-            addFinalizers(sticker.getMetadata(), Set.of(FINALIZER_NAME));
-            handleUploadSticker(sticker);
-            client.update(sticker);
-        });
-        return Result.doNotRetry();
+            return result;
+        }).orElseGet(Result::doNotRetry);
+    }
+
+    private static Duration releaseGraceLeft(Sticker sticker) {
+        var deletionTimestamp = sticker.getMetadata().getDeletionTimestamp();
+        if (deletionTimestamp == null
+            || StringUtils.isBlank(sticker.getSpec().getAttachmentName())) {
+            return Duration.ZERO;
+        }
+        return Duration.between(Instant.now(), deletionTimestamp.plus(ATTACHMENT_RELEASE_GRACE));
     }
 
-    private void handleUploadSticker(Sticker sticker) {
-        log.info("StickerReconciler handleUploadSticker: {}", sticker);
+    /**
+     * Deletes the attachment of a deleted sticker unless another sticker still uses it, since
+     * identical uploads share one attachment. Only attachments uploaded through this plugin are
+     * deleted, never files picked from the attachment library.
+     */
+    private void releaseAttachment(Sticker sticker) {
+        var attachmentName = sticker.getSpec().getAttachmentName();
+        if (StringUtils.isBlank(attachmentName)) {
+            return;
+        }
+        var listOptions = ListOptions.builder()
+            .andQuery(equal("spec.attachmentName", attachmentName))
+            .build();
+        var stickerName = sticker.getMetadata().getName();
+        var referenced = client.listAll(Sticker.class, listOptions, Sort.unsorted()).stream()
+            .anyMatch(other -> !stickerName.equals(other.getMetadata().getName())
+                && !isDeleted(other));
+        if (referenced) {
+            return;
+        }
+        client.fetch(Attachment.class, attachmentName)
+            .filter(attachment -> !isDeleted(attachment))
+            .filter(attachment -> STICKER_ATTACHMENT_GROUP.equals(
+                attachment.getSpec().getGroupName()))
+            .ifPresent(attachment -> {
+                log.debug("Release attachment({}) of deleted sticker({})", attachmentName,
+                    stickerName);
+                client.delete(attachment);
+            });
+    }
+
+    private Result handleUploadSticker(Sticker sticker) {
         var stickerAttachmentName = sticker.getSpec().getAttachmentName();
         var spec = sticker.getSpec();
+        var status = getOrCreateStatus(sticker);
         if (StringUtils.isBlank(stickerAttachmentName)) {
             if (StringUtils.isNotBlank(spec.getUrl())) {
-                log.info("Remove url for sticker({})", sticker.getMetadata().getName());
+                log.debug("Remove url for sticker({})", sticker.getMetadata().getName());
             }
             spec.setUrl(null);
-            return;
+            status.setAttachmentName(null);
+            status.setAttachmentVersion(null);
+            status.setThumbUrl(null);
+            return Result.doNotRetry();
         }
-        client.fetch(Attachment.class, stickerAttachmentName)
-            .flatMap(attachment -> attachmentService.getPermalink(attachment)
-                .blockOptional(Duration.ofMinutes(1))
-            )
-            .map(URI::toString)
-            .ifPresentOrElse(attachment -> {
-                if (!StringUtils.equals(spec.getUrl(), attachment)) {
-                    spec.setUrl(attachment);
+        var attachment = client.fetch(Attachment.class, stickerAttachmentName);
+        if (attachment.isEmpty()) {
+            return handleMissingAttachment(sticker);
+        }
+        var attachmentVersion = attachment.get().getMetadata().getVersion();
+        if (StringUtils.isNotBlank(spec.getUrl())
+            && stickerAttachmentName.equals(status.getAttachmentName())
+            && Objects.equals(attachmentVersion, status.getAttachmentVersion())) {
+            // the attachment is unchanged since the url was resolved
+            status.setThumbUrl(thumbnailUrl(sticker));
+            return Result.doNotRetry();
+        }
+        log.debug("Resolve permalink of attachment({}) for sticker({})", stickerAttachmentName,
+            sticker.getMetadata().getName());
+        var resolution = permalinkResolver.poll(stickerAttachmentName);
+        if (resolution.isEmpty()) {
+            return Result.requeue(PERMALINK_RECHECK_DELAY);
+        }
+        return switch (resolution.get().state()) {
+            case RESOLVED -> {
+                var permalink = resolution.get().permalink();
+                if (!StringUtils.equals(spec.getUrl(), permalink)) {
+                    spec.setUrl(permalink);
                 }
-            }, () -> {
-                log.warn("Failed to get permalink for sticker attachment({})", stickerAttachmentName);
-                spec.setUrl(null);
-            });
+                status.setAttachmentName(stickerAttachmentName);
+                status.setAttachmentVersion(resolution.get().attachmentVersion());
+                status.setThumbUrl(thumbnailUrl(sticker));
+                yield Result.doNotRetry();
+            }
+            case MISSING -> handleMissingAttachment(sticker);
+            case FAILED -> {
+                log.warn("Failed to get permalink for sticker attachment({}), retry later",
+                    stickerAttachmentName);
+                // back off exponentially between the controller's min and max delay
+                yield Result.requeue(null);
+            }
+        };
+    }
+
+    private Result handleMissingAttachment(Sticker sticker) {
+        log.warn("Attachment({}) of sticker({}) does not exist",
+            sticker.getSpec().getAttachmentName(), sticker.getMetadata().getName());
+        sticker.getSpec().setUrl(null);
+        var status = getOrCreateStatus(sticker);
+        status.setAttachmentName(null);
+        status.setAttachmentVersion(null);
+        status.setThumbUrl(null);
+        return Result.doNotRetry();
+    }
+
+    /**
+     * The thumbnail is rendered lazily on first request. The attachment in the query string
+     * changes the URL whenever the file does, so the response can be cached forever.
+     */
+    private static String thumbnailUrl(Sticker sticker) {
+        var status = sticker.getStatus();
+        var version = StickerRenditionService.thumbnailVersion(status.getAttachmentName(),
+            status.getAttachmentVersion());
+        return String.format(THUMBNAIL_URL_TEMPLATE, sticker.getMetadata().getName(),
+            StickerRenditionService.DEFAULT_THUMBNAIL_SIZE, version);
+    }
+
+    private static Sticker.StickerStatus getOrCreateStatus(Sticker sticker) {
+        if (sticker.getStatus() == null) {
+            sticker.setStatus(new Sticker.StickerStatus());
+        }
+        return sticker.getStatus();
     }
 
     @Override
     public Controller setupWith(ControllerBuilder builder) {
+        var workerCount = settingFetcher.fetch(StickerSetting.Advanced.GROUP,
+                StickerSetting.Advanced.class)
+            .map(StickerSetting.Advanced::getReconcilerWorkerCount)
+            .filter(count -> count > 0)
+            .orElse(DEFAULT_WORKER_COUNT);
         return builder
             .extension(new Sticker())
+            .workerCount(workerCount)
             .build();
     }
+
+    /**
+     * The part of a sticker this reconciler may change, compared before and after a reconcile.
+     */
+    private record ReconcileState(Set<String> finalizers, String url, String attachmentName,
+                                  Long attachmentVersion, String thumbUrl) {
+
+        static ReconcileState of(Sticker sticker) {
+            var finalizers = sticker.getMetadata().getFinalizers();
+            var status = sticker.getStatus();
+            return new ReconcileState(
+                finalizers == null ? Set.of() : Set.copyOf(finalizers),
+                sticker.getSpec().getUrl(),
+                status == null ? null : status.getAttachmentName(),
+                status == null ? null : status.getAttachmentVersion(),
+                status == null ? null : status.getThumbUrl());
+        }
+    }
 }
@@ -0,0 +1,21 @@
+package run.halo.sticker.service;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import run.halo.sticker.model.StickerGroup;
+
+public interface StickerExportService {
+
+    /**
+     * Exports the stickers of a group as a ZIP archive. Entries follow the sticker order and are
+     * named so that importing the archive again keeps that order, and a {@code manifest.json}
+     * with the group and sticker metadata is written last.
+     *
+     * <p>The archive is written while it is consumed, one sticker at a time, so neither the
+     * archive nor a sticker file is held in memory or on disk as a whole.
+     *
+     * @param group the sticker group to export
+     * @return a flux of the archive content
+     */
+    Flux<DataBuffer> exportGroup(StickerGroup group);
+}
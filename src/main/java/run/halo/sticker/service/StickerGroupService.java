@@ -0,0 +1,30 @@
+package run.halo.sticker.service;
+
+import reactor.core.publisher.Mono;
+import run.halo.sticker.model.StickerGroup;
+
+public interface StickerGroupService {
+
+    /**
+     * Group name that stands for the default group of current user.
+     */
+    String SELF_GROUP = "-";
+
+    /**
+     * Gets the default group of the user, creating it on first use. Concurrent first calls of
+     * one user create a single group.
+     *
+     * @param username the owner
+     * @return a mono of the default group
+     */
+    Mono<StickerGroup> getOrCreateDefaultGroup(String username);
+
+    /**
+     * Resolves the group to put new stickers of the user in.
+     *
+     * @param groupName a group name, or {@link #SELF_GROUP} for the default group
+     * @param username the current username
+     * @return a mono of the group, or an error if a named group does not exist
+     */
+    Mono<StickerGroup> resolveGroup(String groupName, String username);
+}
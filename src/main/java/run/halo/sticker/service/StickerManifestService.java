@@ -0,0 +1,25 @@
+package run.halo.sticker.service;
+
+import reactor.core.publisher.Mono;
+import run.halo.sticker.pojo.vo.StickerManifest;
+
+public interface StickerManifestService {
+
+    /**
+     * Gets the serialized {@link StickerManifest} of the given user. Repeated calls are served
+     * from memory until a visible sticker or group changes.
+     *
+     * @param username the current username
+     * @return a mono of the manifest snapshot
+     */
+    Mono<Snapshot> getManifest(String username);
+
+    /**
+     * A serialized manifest and its strong entity tag.
+     *
+     * @param etag quoted entity tag derived from the content
+     * @param body the manifest JSON
+     */
+    record Snapshot(String etag, byte[] body) {
+    }
+}
@@ -0,0 +1,67 @@
+package run.halo.sticker.service;
+
+import java.util.List;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import run.halo.sticker.model.Sticker;
+
+public interface StickerOrderService {
+
+    /**
+     * Distance between the sequences of neighbouring stickers after a group is renumbered,
+     * leaving room to insert stickers in between without touching the others.
+     */
+    int SEQUENCE_GAP = 1024;
+
+    /**
+     * Position of {@link Patch#after()} that places a sticker first in its group.
+     */
+    String FIRST = "-";
+
+    /**
+     * Reorders and moves stickers of groups owned by the user. Patches are planned in the
+     * given order and the resulting writes are applied concurrently. A sticker changed by
+     * someone else since it was read is not overwritten, its write fails instead.
+     *
+     * <p>A patch placing a sticker after another gets a sequence halfway between its new
+     * neighbours, so only that sticker is written. Only when there is no gap left is the
+     * target group renumbered with {@link #SEQUENCE_GAP} steps.
+     *
+     * @param patches the patches
+     * @param username the current username
+     * @return a flux of one result per written or rejected sticker
+     */
+    Flux<PatchResult> apply(List<Patch> patches, String username);
+
+    /**
+     * A change of the position of one sticker.
+     *
+     * @param name the sticker name
+     * @param sequence the new sequence, not negative, {@code null} to derive it from
+     * {@code after}
+     * @param groupName the group to move the sticker to, {@code null} to keep its group
+     * @param after the sticker to place this one after, or {@link #FIRST}. Ignored when
+     * {@code sequence} is set, and if both are {@code null} only the group changes.
+     */
+    record Patch(String name, @Nullable Integer sequence, @Nullable String groupName,
+                 @Nullable String after) {
+    }
+
+    /**
+     * Result of a single sticker of a bulk update.
+     *
+     * @param name the sticker name
+     * @param sticker the updated sticker, {@code null} if the update failed
+     * @param error the failure message, {@code null} if the update succeeded
+     */
+    record PatchResult(String name, @Nullable Sticker sticker, @Nullable String error) {
+
+        public static PatchResult success(Sticker sticker) {
+            return new PatchResult(sticker.getMetadata().getName(), sticker, null);
+        }
+
+        public static PatchResult failure(String name, String error) {
+            return new PatchResult(name, null, error);
+        }
+    }
+}
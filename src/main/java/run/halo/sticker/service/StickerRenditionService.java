@@ -0,0 +1,59 @@
+package run.halo.sticker.service;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
+
+public interface StickerRenditionService {
+
+    /**
+     * Edge lengths in pixels a thumbnail may be requested in.
+     */
+    List<Integer> THUMBNAIL_SIZES = List.of(64, 128, 256);
+
+    int DEFAULT_THUMBNAIL_SIZE = 128;
+
+    /**
+     * Gets a thumbnail of the sticker that fits into a square of the given size, generating it
+     * on first request. Stickers that cannot be scaled down, such as animated GIFs or formats
+     * the JDK cannot decode, fall back to the original file.
+     *
+     * @param stickerName the sticker name
+     * @param size one of {@link #THUMBNAIL_SIZES}
+     * @return a mono of the rendition, or empty if the sticker does not exist
+     */
+    Mono<Rendition> getThumbnail(String stickerName, int size);
+
+    /**
+     * Derives the token that versions thumbnail URLs, which changes whenever the sticker points
+     * to another attachment or its attachment changes.
+     *
+     * @param attachmentName the attachment name
+     * @param attachmentVersion the attachment version
+     * @return the version token
+     */
+    static String thumbnailVersion(String attachmentName, Long attachmentVersion) {
+        return Integer.toHexString(Objects.hash(attachmentName, attachmentVersion));
+    }
+
+    /**
+     * Either a generated PNG file or the URL of the original sticker.
+     *
+     * @param file the rendition file
+     * @param originalUrl the URL to serve instead if there is no rendition
+     * @param version the {@link #thumbnailVersion} of the attachment the file was rendered from
+     */
+    record Rendition(@Nullable Path file, @Nullable String originalUrl,
+                     @Nullable String version) {
+
+        public static Rendition of(Path file, String version) {
+            return new Rendition(file, null, version);
+        }
+
+        public static Rendition original(String originalUrl) {
+            return new Rendition(null, originalUrl, null);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package run.halo.sticker.service;
+
+import java.util.Optional;
+import java.util.Set;
+
+public interface StickerSearchService {
+
+    /**
+     * Finds stickers whose display name or description contains the keyword, or whose display
+     * name has pinyin initials containing it, such as {@code kx} for {@code 开心}.
+     *
+     * @param keyword the keyword, matched case-insensitively
+     * @return names of the matching stickers, or empty if the index is still being loaded
+     */
+    Optional<Set<String>> search(String keyword);
+}
@@ -4,6 +4,7 @@ import reactor.core.publisher.Mono;
 import run.halo.app.extension.ListResult;
 import run.halo.sticker.model.Sticker;
 import run.halo.sticker.pojo.query.StickerQuery;
+import run.halo.sticker.pojo.vo.CursorListResult;
 
 public interface StickerService {
 
@@ -14,4 +15,25 @@ public interface StickerService {
      * @return a mono of list result
      */
     Mono<ListResult<Sticker>> listStickers(StickerQuery query);
+
+    /**
+     * Lists stickers after the cursor of the query in {@code (spec.sequence, metadata.name)}
+     * order. Unlike page numbers, a cursor costs the same however deep it is and does not skip
+     * or repeat stickers when others are added meanwhile.
+     *
+     * @param query query with an optional cursor
+     * @return a mono of the page and the cursor of the next one
+     */
+    Mono<CursorListResult<Sticker>> listStickersByCursor(StickerQuery query);
+
+    /**
+     * Deletes a sticker in a group owned by the given user. The attachment is released by the
+     * reconciler once no other sticker uses it.
+     *
+     * @param name sticker name
+     * @param username the current username
+     * @return a mono of the deleted sticker, or empty if it does not exist or is not owned by
+     * the user
+     */
+    Mono<Sticker> deleteSticker(String name, String username);
 }
@@ -0,0 +1,18 @@
+package run.halo.sticker.service;
+
+import org.springframework.lang.Nullable;
+
+public interface StickerShortcodeService {
+
+    /**
+     * Replaces {@code :shortcode:} references in rendered HTML with the images of the stickers
+     * in public groups they refer to. References inside tags and inside {@code code},
+     * {@code pre}, {@code script}, {@code style} and {@code textarea} elements are left as
+     * they are, as are references to unknown shortcodes.
+     *
+     * @param html the rendered HTML
+     * @return the HTML with references expanded, the same instance if there were none
+     */
+    @Nullable
+    String expand(@Nullable String html);
+}
@@ -0,0 +1,26 @@
+package run.halo.sticker.service;
+
+import java.nio.file.Path;
+import reactor.core.publisher.Mono;
+import run.halo.sticker.pojo.vo.StickerSpriteSheet;
+
+public interface StickerSpriteService {
+
+    /**
+     * Gets the sprite sheet of the group, building it if the group changed since the last
+     * build. Tiles are the 64px thumbnails, so only changed stickers are rendered again.
+     *
+     * @param groupName the sticker group name
+     * @return a mono of the sprite sheet
+     */
+    Mono<StickerSpriteSheet> getSpriteSheet(String groupName);
+
+    /**
+     * Gets a previously built sheet image.
+     *
+     * @param groupName the sticker group name
+     * @param hash the {@link StickerSpriteSheet#hash()} of the sheet
+     * @return a mono of the PNG file, or empty if it is not built or was evicted
+     */
+    Mono<Path> getSpriteImage(String groupName, String hash);
+}
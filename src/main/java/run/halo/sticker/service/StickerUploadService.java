@@ -0,0 +1,73 @@
+package run.halo.sticker.service;
+
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.model.StickerGroup;
+
+public interface StickerUploadService {
+
+    /**
+     * Uploads a sticker file and creates its sticker in the given group.
+     *
+     * <p>Requests of the same user with the same idempotency key within a few minutes share
+     * one upload, so a client retry after a lost response does not create a second sticker.
+     *
+     * @param filePart the sticker file
+     * @param groupName the sticker group name, {@code -} for the default group of current user
+     * @param idempotencyKey a client chosen key of the upload, {@code null} to always upload
+     * @return a mono of the created sticker
+     */
+    Mono<Sticker> upload(FilePart filePart, String groupName, @Nullable String idempotencyKey);
+
+    /**
+     * Rejects a single file upload request whose declared length already exceeds the file size
+     * limit of the current attachment policy, so that its body is never read.
+     *
+     * @param contentLength the declared request content length
+     * @return an empty mono, or a {@code 413 Payload Too Large} error
+     */
+    Mono<Void> checkContentLength(long contentLength);
+
+    /**
+     * Uploads several sticker files into the given group. The attachment setting and the group
+     * are resolved once for the whole batch and the files are uploaded with a bounded
+     * concurrency. A failed file does not abort the batch.
+     *
+     * @param fileParts the sticker files
+     * @param groupName the sticker group name, {@code -} for the default group of current user
+     * @return a flux of upload results in the order of the given files
+     */
+    Flux<UploadResult> uploadBatch(Flux<FilePart> fileParts, String groupName);
+
+    /**
+     * Imports a ZIP sticker pack as a new sticker group of current user. The archive is parsed
+     * as a stream and every image entry becomes a sticker whose sequence follows the entry
+     * order.
+     *
+     * @param pack the ZIP archive
+     * @param displayName the group display name, the archive name is used if blank
+     * @return a mono of the created sticker group
+     */
+    Mono<StickerGroup> importPack(FilePart pack, @Nullable String displayName);
+
+    /**
+     * Result of a single file in a batch upload.
+     *
+     * @param fileName the uploaded file name
+     * @param sticker the created sticker, {@code null} if the upload failed
+     * @param error the failure message, {@code null} if the upload succeeded
+     */
+    record UploadResult(String fileName, @Nullable Sticker sticker, @Nullable String error) {
+
+        public static UploadResult success(String fileName, Sticker sticker) {
+            return new UploadResult(fileName, sticker, null);
+        }
+
+        public static UploadResult failure(String fileName, String error) {
+            return new UploadResult(fileName, null, error);
+        }
+    }
+}
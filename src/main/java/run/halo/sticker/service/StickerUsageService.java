@@ -0,0 +1,29 @@
+package run.halo.sticker.service;
+
+import reactor.core.publisher.Mono;
+import run.halo.sticker.pojo.vo.StickerUsageSummary;
+
+public interface StickerUsageService {
+
+    /**
+     * Records that the user inserted the sticker. The count is kept in memory and persisted
+     * in periodic batches, so this never writes to the extension store.
+     *
+     * @param username the current username
+     * @param stickerName the inserted sticker, which must be in a public group or a group of
+     * the user
+     * @return a mono completing once recorded, or failing if the sticker is not visible to
+     * the user
+     */
+    Mono<Void> record(String username, String stickerName);
+
+    /**
+     * Gets the most recently and the most often used stickers of the user, including usage
+     * not persisted yet.
+     *
+     * @param username the current username
+     * @param limit maximum number of stickers in each list
+     * @return a mono of the summary
+     */
+    Mono<StickerUsageSummary> getSummary(String username, int limit);
+}
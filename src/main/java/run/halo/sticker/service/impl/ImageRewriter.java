@@ -0,0 +1,410 @@
+package run.halo.sticker.service.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Lossless rewrites of sticker images on the byte level, without decoding any pixels.
+ *
+ * <p>Metadata that browsers do not need for rendering is dropped from every type, and the image
+ * data of still PNGs is deflated again at the best compression level. Embedded color profiles
+ * are kept, since browsers apply them and a wide gamut image would look washed out without. The
+ * pixels, animation frames and timing are never touched, and a malformed file fails the rewrite
+ * rather than being repaired. Rewrites check the deadline in their longer loops and fail once
+ * it has passed.
+ */
+final class ImageRewriter {
+
+    private static final byte[] PNG_SIGNATURE =
+        {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * PNG chunks without effect on the rendered image: text, EXIF, timestamps and physical pixel
+     * dimensions.
+     */
+    private static final Set<String> PNG_DROPPED_CHUNKS =
+        Set.of("tEXt", "zTXt", "iTXt", "eXIf", "tIME", "pHYs");
+
+    private static final byte[] JPEG_ICC_PROFILE =
+        "ICC_PROFILE\0".getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     * Upper bound of the decompressed image data of a PNG to recompress, so a small file cannot
+     * make the rewrite allocate without limit.
+     */
+    private static final int MAX_INFLATED_SIZE = 64 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ImageRewriter() {
+    }
+
+    static byte[] rewrite(ImageType type, byte[] image, long deadlineNanos)
+        throws TimeoutException {
+        return switch (type) {
+            case PNG -> rewritePng(image, deadlineNanos);
+            case JPEG -> rewriteJpeg(image);
+            case GIF -> rewriteGif(image, deadlineNanos);
+            case WEBP -> rewriteWebp(image);
+        };
+    }
+
+    /**
+     * Drops metadata chunks and recompresses the image data. The image data of animated PNGs
+     * is spread over frame chunks and is left as is.
+     */
+    static byte[] rewritePng(byte[] image, long deadlineNanos) throws TimeoutException {
+        if (image.length < PNG_SIGNATURE.length
+            || !Arrays.equals(image, 0, PNG_SIGNATURE.length, PNG_SIGNATURE, 0,
+            PNG_SIGNATURE.length)) {
+            throw new IllegalArgumentException("Not a PNG image");
+        }
+        var animated = false;
+        int scan = PNG_SIGNATURE.length;
+        while (scan < image.length) {
+            var length = chunkLength(image, scan);
+            var type = chunkType(image, scan);
+            if ("acTL".equals(type)) {
+                animated = true;
+            }
+            if (animated || "IEND".equals(type)) {
+                break;
+            }
+            scan += 12 + length;
+        }
+        var out = new ByteArrayOutputStream(image.length);
+        out.write(image, 0, PNG_SIGNATURE.length);
+        int pos = PNG_SIGNATURE.length;
+        while (pos < image.length) {
+            var length = chunkLength(image, pos);
+            var type = chunkType(image, pos);
+            if ("IDAT".equals(type) && !animated) {
+                // consecutive data chunks form a single zlib stream
+                var compressed = new ByteArrayOutputStream(image.length);
+                do {
+                    var dataLength = chunkLength(image, pos);
+                    compressed.write(image, pos + 8, dataLength);
+                    pos += 12 + dataLength;
+                } while (pos + 8 <= image.length && "IDAT".equals(chunkType(image, pos)));
+                writePngChunk(out, "IDAT",
+                    recompress(compressed.toByteArray(), deadlineNanos));
+                continue;
+            }
+            if (!PNG_DROPPED_CHUNKS.contains(type)) {
+                out.write(image, pos, 12 + length);
+            }
+            if ("IEND".equals(type)) {
+                return out.toByteArray();
+            }
+            pos += 12 + length;
+        }
+        throw new IllegalArgumentException("Truncated PNG image");
+    }
+
+    private static int chunkLength(byte[] image, int pos) {
+        if (pos + 12 > image.length) {
+            throw new IllegalArgumentException("Truncated PNG chunk");
+        }
+        var length = readIntBigEndian(image, pos);
+        if (length < 0 || pos + 12L + length > image.length) {
+            throw new IllegalArgumentException("Invalid PNG chunk length");
+        }
+        return length;
+    }
+
+    private static String chunkType(byte[] image, int pos) {
+        return new String(image, pos + 4, 4, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void writePngChunk(ByteArrayOutputStream out, String type, byte[] data) {
+        var typeBytes = type.getBytes(StandardCharsets.ISO_8859_1);
+        writeIntBigEndian(out, data.length);
+        out.write(typeBytes, 0, typeBytes.length);
+        out.write(data, 0, data.length);
+        var crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        writeIntBigEndian(out, (int) crc.getValue());
+    }
+
+    private static byte[] recompress(byte[] compressed, long deadlineNanos)
+        throws TimeoutException {
+        var inflater = new Inflater();
+        var deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            inflater.setInput(compressed);
+            var inflated = new ByteArrayOutputStream(compressed.length * 4);
+            var buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                checkDeadline(deadlineNanos);
+                var count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated PNG image data");
+                }
+                if (inflated.size() + count > MAX_INFLATED_SIZE) {
+                    throw new IllegalArgumentException("PNG image data is too large");
+                }
+                inflated.write(buffer, 0, count);
+            }
+            deflater.setInput(inflated.toByteArray());
+            deflater.finish();
+            var deflated = new ByteArrayOutputStream(compressed.length);
+            while (!deflater.finished()) {
+                checkDeadline(deadlineNanos);
+                var count = deflater.deflate(buffer);
+                deflated.write(buffer, 0, count);
+            }
+            return deflated.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid PNG image data", e);
+        } finally {
+            inflater.end();
+            deflater.end();
+        }
+    }
+
+    /**
+     * Drops application and comment segments, keeping JFIF and Adobe segments, which affect how
+     * the image is decoded, ICC profile segments, and EXIF segments with a non-default
+     * orientation, which browsers apply when rendering. The entropy coded data is copied as is.
+     */
+    static byte[] rewriteJpeg(byte[] image) {
+        if (image.length < 2 || (image[0] & 0xFF) != 0xFF || (image[1] & 0xFF) != 0xD8) {
+            throw new IllegalArgumentException("Not a JPEG image");
+        }
+        var out = new ByteArrayOutputStream(image.length);
+        out.write(image, 0, 2);
+        int pos = 2;
+        while (pos + 4 <= image.length) {
+            if ((image[pos] & 0xFF) != 0xFF) {
+                throw new IllegalArgumentException("Invalid JPEG marker");
+            }
+            var marker = image[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                // fill byte before a marker
+                pos++;
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                // start of scan, everything up to the end is image data
+                out.write(image, pos, image.length - pos);
+                return out.toByteArray();
+            }
+            var length = ((image[pos + 2] & 0xFF) << 8) | (image[pos + 3] & 0xFF);
+            if (length < 2 || pos + 2 + length > image.length) {
+                throw new IllegalArgumentException("Invalid JPEG segment length");
+            }
+            if (!isDroppedJpegSegment(image, marker, pos + 4, length - 2)) {
+                out.write(image, pos, 2 + length);
+            }
+            pos += 2 + length;
+        }
+        throw new IllegalArgumentException("Truncated JPEG image");
+    }
+
+    private static boolean isDroppedJpegSegment(byte[] image, int marker, int start, int length) {
+        if (marker == 0xFE) {
+            return true;
+        }
+        if (marker < 0xE0 || marker > 0xEF || marker == 0xE0 || marker == 0xEE) {
+            return false;
+        }
+        if (marker == 0xE2) {
+            return !startsWith(image, start, length, JPEG_ICC_PROFILE);
+        }
+        return marker != 0xE1 || exifOrientation(image, start, length) == 1;
+    }
+
+    private static boolean startsWith(byte[] image, int start, int length, byte[] prefix) {
+        return length >= prefix.length
+            && Arrays.equals(image, start, start + prefix.length, prefix, 0, prefix.length);
+    }
+
+    /**
+     * Reads the orientation tag of an APP1 segment.
+     *
+     * @return the orientation, {@code 1} if the segment is not EXIF or has none
+     */
+    private static int exifOrientation(byte[] image, int start, int length) {
+        var exifHeader = "Exif\0\0".getBytes(StandardCharsets.ISO_8859_1);
+        if (length < exifHeader.length + 8) {
+            return 1;
+        }
+        for (int i = 0; i < exifHeader.length; i++) {
+            if (image[start + i] != exifHeader[i]) {
+                return 1;
+            }
+        }
+        var tiff = start + exifHeader.length;
+        var end = start + length;
+        var littleEndian = image[tiff] == 'I' && image[tiff + 1] == 'I';
+        var ifd = tiff + readInt(image, tiff + 4, littleEndian);
+        if (ifd < tiff || ifd + 2 > end) {
+            return 1;
+        }
+        var entries = readShort(image, ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            var entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                return 1;
+            }
+            if (readShort(image, entry, littleEndian) == 0x0112) {
+                return readShort(image, entry + 8, littleEndian);
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Drops comment extensions and application extensions other than the looping ones and
+     * color profiles, such as embedded XMP packets.
+     */
+    static byte[] rewriteGif(byte[] image, long deadlineNanos) throws TimeoutException {
+        if (image.length < 13 || image[0] != 'G' || image[1] != 'I' || image[2] != 'F') {
+            throw new IllegalArgumentException("Not a GIF image");
+        }
+        var out = new ByteArrayOutputStream(image.length);
+        int pos = 13 + colorTableSize(image[10]);
+        out.write(image, 0, pos);
+        while (pos < image.length) {
+            checkDeadline(deadlineNanos);
+            var introducer = image[pos] & 0xFF;
+            if (introducer == 0x3B) {
+                out.write(image, pos, 1);
+                return out.toByteArray();
+            }
+            int end;
+            boolean dropped = false;
+            if (introducer == 0x21) {
+                if (pos + 2 > image.length) {
+                    throw new IllegalArgumentException("Truncated GIF extension");
+                }
+                var label = image[pos + 1] & 0xFF;
+                end = skipSubBlocks(image, pos + 2);
+                if (label == 0xFE) {
+                    dropped = true;
+                } else if (label == 0xFF) {
+                    var identifier = new String(image, pos + 3,
+                        Math.min(11, image.length - pos - 3), StandardCharsets.ISO_8859_1);
+                    dropped = !identifier.startsWith("NETSCAPE2.0")
+                        && !identifier.startsWith("ANIMEXTS1.0")
+                        && !identifier.startsWith("ICCRGBG1012");
+                }
+            } else if (introducer == 0x2C) {
+                var descriptorEnd = pos + 10;
+                if (descriptorEnd > image.length) {
+                    throw new IllegalArgumentException("Truncated GIF image descriptor");
+                }
+                // local color table and the LZW minimum code size precede the data
+                end = skipSubBlocks(image, descriptorEnd + colorTableSize(image[pos + 9]) + 1);
+            } else {
+                throw new IllegalArgumentException("Invalid GIF block");
+            }
+            if (!dropped) {
+                out.write(image, pos, end - pos);
+            }
+            pos = end;
+        }
+        throw new IllegalArgumentException("Truncated GIF image");
+    }
+
+    private static int colorTableSize(byte flags) {
+        return (flags & 0x80) == 0 ? 0 : 3 * (1 << ((flags & 0x07) + 1));
+    }
+
+    private static int skipSubBlocks(byte[] image, int pos) {
+        while (pos < image.length) {
+            var size = image[pos] & 0xFF;
+            pos += 1 + size;
+            if (size == 0) {
+                return pos;
+            }
+        }
+        throw new IllegalArgumentException("Truncated GIF data");
+    }
+
+    /**
+     * Drops the EXIF and XMP chunks of an extended WebP and clears their flags, keeping the color
+     * profile. Simple WebP files carry no metadata and are returned unchanged.
+     */
+    static byte[] rewriteWebp(byte[] image) {
+        if (image.length < 20 || !"RIFF".equals(fourCc(image, 0))
+            || !"WEBP".equals(fourCc(image, 8))) {
+            throw new IllegalArgumentException("Not a WebP image");
+        }
+        if (!"VP8X".equals(fourCc(image, 12))) {
+            return image;
+        }
+        var out = new ByteArrayOutputStream(image.length);
+        out.write(image, 0, 12);
+        int pos = 12;
+        while (pos + 8 <= image.length) {
+            var fourCc = fourCc(image, pos);
+            var size = readInt(image, pos + 4, true);
+            var end = pos + 8L + size + (size & 1);
+            if (size < 0 || end > image.length) {
+                throw new IllegalArgumentException("Invalid WebP chunk size");
+            }
+            if ("VP8X".equals(fourCc)) {
+                var chunk = Arrays.copyOfRange(image, pos, (int) end);
+                // clear the EXIF and XMP flags
+                chunk[8] &= (byte) ~(0x08 | 0x04);
+                out.write(chunk, 0, chunk.length);
+            } else if (!"EXIF".equals(fourCc) && !"XMP ".equals(fourCc)) {
+                out.write(image, pos, (int) (end - pos));
+            }
+            pos = (int) end;
+        }
+        var rewritten = out.toByteArray();
+        var riffSize = rewritten.length - 8;
+        rewritten[4] = (byte) riffSize;
+        rewritten[5] = (byte) (riffSize >>> 8);
+        rewritten[6] = (byte) (riffSize >>> 16);
+        rewritten[7] = (byte) (riffSize >>> 24);
+        return rewritten;
+    }
+
+    private static String fourCc(byte[] image, int pos) {
+        return new String(image, pos, 4, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void checkDeadline(long deadlineNanos) throws TimeoutException {
+        if (System.nanoTime() - deadlineNanos > 0) {
+            throw new TimeoutException("Image rewrite exceeded its time budget");
+        }
+    }
+
+    private static int readIntBigEndian(byte[] bytes, int pos) {
+        return readInt(bytes, pos, false);
+    }
+
+    private static int readInt(byte[] bytes, int pos, boolean littleEndian) {
+        if (littleEndian) {
+            return (bytes[pos] & 0xFF) | (bytes[pos + 1] & 0xFF) << 8
+                | (bytes[pos + 2] & 0xFF) << 16 | (bytes[pos + 3] & 0xFF) << 24;
+        }
+        return (bytes[pos] & 0xFF) << 24 | (bytes[pos + 1] & 0xFF) << 16
+            | (bytes[pos + 2] & 0xFF) << 8 | (bytes[pos + 3] & 0xFF);
+    }
+
+    private static int readShort(byte[] bytes, int pos, boolean littleEndian) {
+        if (littleEndian) {
+            return (bytes[pos] & 0xFF) | (bytes[pos + 1] & 0xFF) << 8;
+        }
+        return (bytes[pos] & 0xFF) << 8 | (bytes[pos + 1] & 0xFF);
+    }
+
+    private static void writeIntBigEndian(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
@@ -0,0 +1,74 @@
+package run.halo.sticker.service.impl;
+
+import java.util.Optional;
+import org.springframework.http.MediaType;
+
+/**
+ * Image types accepted as stickers, recognized by the magic bytes at the start of a file rather
+ * than by its name or declared content type.
+ */
+enum ImageType {
+    PNG("image/png", "png"),
+    JPEG("image/jpeg", "jpg"),
+    GIF("image/gif", "gif"),
+    WEBP("image/webp", "webp");
+
+    /**
+     * Number of leading bytes needed to recognize every type.
+     */
+    static final int SIGNATURE_LENGTH = 12;
+
+    private final MediaType mediaType;
+    private final String extension;
+
+    ImageType(String mediaType, String extension) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+        this.extension = extension;
+    }
+
+    MediaType mediaType() {
+        return mediaType;
+    }
+
+    String extension() {
+        return extension;
+    }
+
+    /**
+     * Recognizes the image type from the leading bytes of a file.
+     *
+     * @param header the leading bytes
+     * @param length the number of valid bytes in {@code header}, less than
+     * {@link #SIGNATURE_LENGTH} only for files that short
+     * @return the image type, or empty if the bytes are not of an accepted type
+     */
+    static Optional<ImageType> sniff(byte[] header, int length) {
+        if (startsWith(header, length, 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n')) {
+            return Optional.of(PNG);
+        }
+        if (startsWith(header, length, 0xFF, 0xD8, 0xFF)) {
+            return Optional.of(JPEG);
+        }
+        if (startsWith(header, length, 'G', 'I', 'F', '8', '7', 'a')
+            || startsWith(header, length, 'G', 'I', 'F', '8', '9', 'a')) {
+            return Optional.of(GIF);
+        }
+        if (length >= 12 && startsWith(header, length, 'R', 'I', 'F', 'F')
+            && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return Optional.of(WEBP);
+        }
+        return Optional.empty();
+    }
+
+    private static boolean startsWith(byte[] header, int length, int... signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((header[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
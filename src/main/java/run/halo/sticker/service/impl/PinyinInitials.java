@@ -0,0 +1,81 @@
+package run.halo.sticker.service.impl;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Converts Chinese text to the initials of its pinyin, such as {@code 开心} to {@code kx}.
+ *
+ * <p>Level-1 hanzi of GB2312 are ordered by pinyin, so the initial of such a character follows
+ * from the range its code point falls into. This needs no dictionary but only covers the 3755
+ * most common characters. Level-2 characters are dropped, and polyphones always get the initial
+ * of the reading they are sorted by.
+ */
+@Slf4j
+final class PinyinInitials {
+
+    private static final int[] BOUNDARIES = {
+        0xB0A1, 0xB0C5, 0xB2C1, 0xB4EE, 0xB6EA, 0xB7A2, 0xB8C1, 0xB9FE, 0xBBF7, 0xBFA6, 0xC0AC,
+        0xC2E8, 0xC4C3, 0xC5B6, 0xC5BE, 0xC6DA, 0xC8BB, 0xC8F6, 0xCBFA, 0xCDDA, 0xCEF4, 0xD1B9,
+        0xD4D1, 0xD7FA
+    };
+    private static final char[] INITIALS = "abcdefghjklmnopqrstwxyz".toCharArray();
+
+    private static final Charset GB2312 = lookupGb2312();
+
+    private PinyinInitials() {
+    }
+
+    /**
+     * Gets the pinyin initials of the hanzi in the text, keeping ASCII letters and digits.
+     *
+     * @return the initials in lower case, empty if the text has no convertible character
+     */
+    static String of(String text) {
+        var encoder = GB2312 == null ? null : GB2312.newEncoder();
+        var initials = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            if (c < 0x80) {
+                if (Character.isLetterOrDigit(c)) {
+                    initials.append(Character.toLowerCase(c));
+                }
+                continue;
+            }
+            var initial = initialOf(encoder, c);
+            if (initial != 0) {
+                initials.append(initial);
+            }
+        }
+        return initials.toString();
+    }
+
+    private static char initialOf(CharsetEncoder encoder, char c) {
+        if (encoder == null || !Character.isIdeographic(c) || !encoder.canEncode(c)) {
+            return 0;
+        }
+        var bytes = String.valueOf(c).getBytes(GB2312);
+        if (bytes.length != 2) {
+            return 0;
+        }
+        var code = (bytes[0] & 0xFF) << 8 | (bytes[1] & 0xFF);
+        if (code < BOUNDARIES[0] || code >= BOUNDARIES[BOUNDARIES.length - 1]) {
+            return 0;
+        }
+        var index = Arrays.binarySearch(BOUNDARIES, code);
+        // an exact hit is the first character of that initial
+        var range = index >= 0 ? index : -index - 2;
+        return INITIALS[range];
+    }
+
+    private static Charset lookupGb2312() {
+        try {
+            return Charset.forName("GB2312");
+        } catch (IllegalArgumentException e) {
+            log.warn("GB2312 is not supported by this JVM, pinyin search is disabled");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package run.halo.sticker.service.impl;
+
+import static run.halo.app.extension.index.query.QueryFactory.equal;
+
+import com.google.common.io.Files;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import run.halo.app.core.extension.attachment.Attachment;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.infra.utils.JsonUtils;
+import run.halo.sticker.infra.AttachmentContentReader;
+import run.halo.sticker.infra.DataBufferInputStream;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.model.StickerGroup;
+import run.halo.sticker.pojo.enums.StickerSorter;
+import run.halo.sticker.service.StickerExportService;
+
+/**
+ * Streams sticker groups as ZIP archives.
+ *
+ * <p>Only the sticker and attachment metadata is collected up front. The archive itself is
+ * written on a blocking thread into an output stream that emits a buffer per chunk and blocks
+ * while the client has no demand, and each sticker file is copied from its permalink through a
+ * stream with a few buffers of prefetch. Memory use therefore depends on the chunk and prefetch
+ * sizes only, not on the size of the group.
+ */
+@Slf4j
+@Component
+public class StickerExportServiceImpl implements StickerExportService, DisposableBean {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int PREFETCH = 4;
+    private static final int METADATA_CONCURRENCY = 8;
+
+    private final ReactiveExtensionClient client;
+    private final AttachmentContentReader contentReader;
+    private final Scheduler scheduler;
+
+    public StickerExportServiceImpl(ReactiveExtensionClient client,
+        AttachmentContentReader contentReader) {
+        this.client = client;
+        this.contentReader = contentReader;
+        this.scheduler = Schedulers.newBoundedElastic(4, 16, "sticker-export");
+    }
+
+    @Override
+    public Flux<DataBuffer> exportGroup(StickerGroup group) {
+        var groupName = group.getMetadata().getName();
+        var listOptions = ListOptions.builder()
+            .andQuery(equal("spec.groupName", groupName))
+            .build();
+        return client.listAll(Sticker.class, listOptions, Sort.unsorted())
+            .sort(StickerSorter.sequenceComparator())
+            .flatMapSequential(sticker -> fetchAttachment(sticker)
+                .map(attachment -> new ExportItem(sticker, attachment)), METADATA_CONCURRENCY)
+            .collectList()
+            .flatMapMany(items -> DataBufferUtils.outputStreamPublisher(
+                outputStream -> writeArchive(group, items, outputStream),
+                DefaultDataBufferFactory.sharedInstance, scheduler::schedule, CHUNK_SIZE));
+    }
+
+    private Mono<Attachment> fetchAttachment(Sticker sticker) {
+        var attachmentName = sticker.getStatus() != null
+            && StringUtils.isNotBlank(sticker.getStatus().getAttachmentName())
+            ? sticker.getStatus().getAttachmentName()
+            : sticker.getSpec().getAttachmentName();
+        if (StringUtils.isBlank(attachmentName)) {
+            return Mono.empty();
+        }
+        return client.fetch(Attachment.class, attachmentName)
+            .switchIfEmpty(Mono.fromRunnable(() -> log.debug(
+                "Skipped sticker {} in export, attachment {} not found",
+                sticker.getMetadata().getName(), attachmentName)));
+    }
+
+    private void writeArchive(StickerGroup group, List<ExportItem> items,
+        OutputStream outputStream) {
+        var entryNames = new ArrayList<String>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            entryNames.add(entryName(i, items.get(i)));
+        }
+        try (var zip = new ZipOutputStream(outputStream)) {
+            // the manifest goes first, so that an import can apply it while streaming the files
+            zip.putNextEntry(new ZipEntry(StickerPackManifest.ENTRY_NAME));
+            zip.write(JsonUtils.mapper().writeValueAsBytes(manifest(group, items, entryNames)));
+            zip.closeEntry();
+            // sticker images are compressed already, so they are written as stored deflate
+            // blocks, which needs no sizes or checksums up front unlike STORED entries
+            zip.setLevel(Deflater.NO_COMPRESSION);
+            for (int i = 0; i < items.size(); i++) {
+                zip.putNextEntry(new ZipEntry(entryNames.get(i)));
+                try (var content = new DataBufferInputStream(
+                    contentReader.read(items.get(i).attachment()), PREFETCH)) {
+                    content.transferTo(zip);
+                }
+                zip.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String entryName(int index, ExportItem item) {
+        var spec = item.sticker().getSpec();
+        var fileName = StringUtils.defaultIfBlank(
+            item.attachment().getSpec().getDisplayName(), spec.getDisplayName());
+        var extension = Files.getFileExtension(StringUtils.defaultString(fileName));
+        if (extension.isEmpty()) {
+            extension = extensionOf(item.attachment().getSpec().getMediaType());
+        }
+        var baseName = sanitize(StringUtils.defaultIfBlank(spec.getDisplayName(),
+            item.sticker().getMetadata().getName()));
+        baseName = StringUtils.removeEndIgnoreCase(baseName, "." + extension);
+        // the index prefix keeps names unique and the import order equal to the sticker order
+        return String.format("%04d-%s.%s", index + 1, baseName,
+            extension.toLowerCase(Locale.ROOT));
+    }
+
+    private static String extensionOf(String mediaType) {
+        if (StringUtils.isBlank(mediaType)) {
+            return "bin";
+        }
+        try {
+            var subtype = MediaType.parseMediaType(mediaType).getSubtype();
+            return StringUtils.defaultIfBlank(
+                StringUtils.substringBefore(subtype, "+"), "bin");
+        } catch (IllegalArgumentException e) {
+            return "bin";
+        }
+    }
+
+    private static String sanitize(String name) {
+        var sanitized = name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").strip();
+        return StringUtils.abbreviate(sanitized, "", 100);
+    }
+
+    private static StickerPackManifest manifest(StickerGroup group, List<ExportItem> items,
+        List<String> entryNames) {
+        var stickers = new ArrayList<StickerPackManifest.Entry>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            var spec = items.get(i).sticker().getSpec();
+            stickers.add(new StickerPackManifest.Entry(entryNames.get(i), spec.getDisplayName(),
+                spec.getDescription(), spec.getSequence()));
+        }
+        var spec = group.getSpec();
+        return new StickerPackManifest(
+            new StickerPackManifest.Group(spec.getDisplayName(), spec.getDescription()),
+            stickers);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+
+    private record ExportItem(Sticker sticker, Attachment attachment) {
+    }
+}
@@ -0,0 +1,145 @@
+package run.halo.sticker.service.impl;
+
+import static run.halo.app.extension.index.query.QueryFactory.and;
+import static run.halo.app.extension.index.query.QueryFactory.equal;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+import run.halo.app.extension.ExtensionUtil;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.Metadata;
+import run.halo.app.extension.PageRequestImpl;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.sticker.event.StickerGroupChangedEvent;
+import run.halo.sticker.model.StickerGroup;
+import run.halo.sticker.service.StickerGroupService;
+
+@Slf4j
+@Component
+public class StickerGroupServiceImpl implements StickerGroupService {
+
+    private static final String DEFAULT_GROUP_NAME_SUFFIX = "-stickers";
+    private static final String DEFAULT_GROUP_DISPLAY_NAME = "我的表情";
+
+    private final ReactiveExtensionClient client;
+
+    /**
+     * Username to the name of the default group of that user.
+     */
+    private final Cache<String, String> defaultGroups = CacheBuilder.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterAccess(Duration.ofHours(1))
+        .build();
+
+    /**
+     * In-flight default group lookups by username, so concurrent first uploads create one
+     * group.
+     */
+    private final ConcurrentMap<String, Mono<StickerGroup>> resolving =
+        new ConcurrentHashMap<>();
+
+    public StickerGroupServiceImpl(ReactiveExtensionClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public Mono<StickerGroup> getOrCreateDefaultGroup(String username) {
+        var cachedName = defaultGroups.getIfPresent(username);
+        var cached = cachedName == null ? Mono.<StickerGroup>empty()
+            : client.fetch(StickerGroup.class, cachedName)
+                .filter(group -> isDefaultGroupOf(group, username));
+        return cached.switchIfEmpty(Mono.defer(() -> resolving.computeIfAbsent(username,
+            key -> findDefaultGroup(username)
+                .switchIfEmpty(Mono.defer(() -> createDefaultGroup(username)))
+                .doOnNext(group -> defaultGroups.put(username, group.getMetadata().getName()))
+                .doFinally(signal -> resolving.remove(key))
+                .cache())));
+    }
+
+    @Override
+    public Mono<StickerGroup> resolveGroup(String groupName, String username) {
+        if (SELF_GROUP.equals(groupName)) {
+            return getOrCreateDefaultGroup(username);
+        }
+        return client.fetch(StickerGroup.class, groupName)
+            .filter(group -> !ExtensionUtil.isDeleted(group))
+            .switchIfEmpty(Mono.error(() -> new ServerWebInputException(
+                "Sticker group " + groupName + " does not exist")));
+    }
+
+    private Mono<StickerGroup> findDefaultGroup(String username) {
+        var listOptions = ListOptions.builder()
+            .andQuery(and(equal("spec.owner", username), equal("spec.isDefault", "true")))
+            .build();
+        return client.listBy(StickerGroup.class, listOptions,
+                PageRequestImpl.of(1, 1, Sort.by("metadata.creationTimestamp", "metadata.name")))
+            .flatMap(result -> Mono.justOrEmpty(result.get().findFirst()));
+    }
+
+    /**
+     * Creates the default group under a name derived from the username, so that even a race
+     * across nodes ends with one group: the loser of the create reads the winner's group.
+     *
+     * <p>Group names can be chosen by clients, so a group found under that name is only taken
+     * if it is the user's own default group. If somebody else holds the name, the default group
+     * is created under a random name instead, which {@link #findDefaultGroup} finds from then on.
+     */
+    private Mono<StickerGroup> createDefaultGroup(String username) {
+        var groupName = username + DEFAULT_GROUP_NAME_SUFFIX;
+        return client.create(newDefaultGroup(groupName, username))
+            .onErrorResume(e -> client.fetch(StickerGroup.class, groupName)
+                .switchIfEmpty(Mono.error(e))
+                .flatMap(existing -> {
+                    if (isDefaultGroupOf(existing, username)) {
+                        return Mono.just(existing);
+                    }
+                    log.warn("Sticker group {} is not the default group of user {}, creating "
+                        + "it under another name", groupName, username);
+                    return client.create(newDefaultGroup(
+                        groupName + "-" + UUID.randomUUID(), username));
+                }));
+    }
+
+    private static boolean isDefaultGroupOf(StickerGroup group, String username) {
+        var spec = group.getSpec();
+        return !ExtensionUtil.isDeleted(group) && spec != null
+            && username.equals(spec.getOwner()) && Boolean.TRUE.equals(spec.getIsDefault());
+    }
+
+    private static StickerGroup newDefaultGroup(String groupName, String username) {
+        var defaultGroup = new StickerGroup();
+        defaultGroup.setMetadata(new Metadata());
+        defaultGroup.getMetadata().setName(groupName);
+        defaultGroup.setSpec(new StickerGroup.StickerGroupSpec());
+        defaultGroup.getSpec().setDisplayName(DEFAULT_GROUP_DISPLAY_NAME);
+        defaultGroup.getSpec().setIsPublic(false);
+        defaultGroup.getSpec().setIsDefault(true);
+        defaultGroup.getSpec().setOwner(username);
+        log.info("Creating default sticker group for user {}", username);
+        return defaultGroup;
+    }
+
+    @EventListener(StickerGroupChangedEvent.class)
+    public void onStickerGroupChanged(StickerGroupChangedEvent event) {
+        Stream.of(event.getOldGroup(), event.getGroup())
+            .filter(Objects::nonNull)
+            .map(StickerGroup::getSpec)
+            .filter(Objects::nonNull)
+            .filter(spec -> Boolean.TRUE.equals(spec.getIsDefault()))
+            .map(StickerGroup.StickerGroupSpec::getOwner)
+            .filter(Objects::nonNull)
+            .forEach(defaultGroups::invalidate);
+    }
+}
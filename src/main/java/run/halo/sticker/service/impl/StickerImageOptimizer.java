@@ -0,0 +1,77 @@
+package run.halo.sticker.service.impl;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import run.halo.sticker.infra.StickerMetrics;
+
+/**
+ * Optimizes uploaded sticker images losslessly before they are stored.
+ *
+ * <p>Rewrites run on a small dedicated pool, so a burst of uploads queues here instead of
+ * taking the threads of other work, and each image gets a time budget. The optimized image is
+ * only used if it is smaller; when the rewrite fails, runs out of time or the pool is full, the
+ * original is stored as uploaded.
+ */
+@Slf4j
+@Component
+public class StickerImageOptimizer implements DisposableBean {
+
+    private static final int MAX_QUEUED_TASKS = 64;
+
+    private final StickerMetrics metrics;
+    private final Scheduler scheduler;
+
+    public StickerImageOptimizer(StickerMetrics metrics) {
+        this.metrics = metrics;
+        this.scheduler = Schedulers.newBoundedElastic(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2), MAX_QUEUED_TASKS,
+            "sticker-optimize");
+    }
+
+    /**
+     * Optimizes the image within the given budget.
+     *
+     * @param type the recognized image type
+     * @param image the image content
+     * @param budget the time budget of the rewrite
+     * @return a mono of the optimized image, or empty to store the original
+     */
+    Mono<byte[]> optimize(ImageType type, byte[] image, Duration budget) {
+        var typeTag = type.name().toLowerCase(Locale.ROOT);
+        return Mono.fromCallable(() -> {
+                var deadline = System.nanoTime() + budget.toNanos();
+                return ImageRewriter.rewrite(type, image, deadline);
+            })
+            .subscribeOn(scheduler)
+            // the rewrite stops by itself at its deadline, this only guards a wait in the queue
+            .timeout(budget.multipliedBy(2))
+            .flatMap(optimized -> {
+                if (optimized.length >= image.length) {
+                    metrics.recordOptimization(typeTag, "unchanged", 0L);
+                    return Mono.empty();
+                }
+                metrics.recordOptimization(typeTag, "optimized",
+                    image.length - optimized.length);
+                return Mono.just(optimized);
+            })
+            .onErrorResume(e -> {
+                var outcome = e instanceof TimeoutException ? "timeout" : "failed";
+                log.debug("Stored sticker image as uploaded, optimization {}: {}", outcome,
+                    e.getMessage());
+                metrics.recordOptimization(typeTag, outcome, 0L);
+                return Mono.empty();
+            });
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+}
@@ -0,0 +1,161 @@
+package run.halo.sticker.service.impl;
+
+import static run.halo.app.extension.index.query.QueryFactory.equal;
+import static run.halo.app.extension.index.query.QueryFactory.in;
+import static run.halo.app.extension.index.query.QueryFactory.or;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.infra.utils.JsonUtils;
+import run.halo.sticker.event.StickerChangedEvent;
+import run.halo.sticker.event.StickerGroupChangedEvent;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.model.StickerGroup;
+import run.halo.sticker.pojo.enums.StickerSorter;
+import run.halo.sticker.pojo.vo.StickerManifest;
+import run.halo.sticker.service.StickerManifestService;
+
+@Component
+public class StickerManifestServiceImpl implements StickerManifestService {
+
+    private static final int MAX_CACHED_USERS = 4096;
+    private static final int MAX_CACHED_MANIFESTS = 1024;
+    private static final Duration CACHE_TTL = Duration.ofMinutes(30);
+
+    private final ReactiveExtensionClient client;
+
+    /**
+     * Username to the sorted names of the groups visible to that user.
+     */
+    private final Cache<String, List<String>> visibleGroups = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_USERS)
+        .expireAfterWrite(CACHE_TTL)
+        .build();
+
+    /**
+     * Group set to its manifest. Users that see the same groups share one entry.
+     */
+    private final Cache<List<String>, Snapshot> manifests = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_MANIFESTS)
+        .expireAfterWrite(CACHE_TTL)
+        .build();
+
+    /**
+     * Bumped on every invalidation so that a manifest built concurrently with a change is not
+     * put back into the cache.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public StickerManifestServiceImpl(ReactiveExtensionClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public Mono<Snapshot> getManifest(String username) {
+        var currentGeneration = generation.get();
+        var groupNames = visibleGroups.getIfPresent(username);
+        if (groupNames != null) {
+            var snapshot = manifests.getIfPresent(groupNames);
+            if (snapshot != null) {
+                return Mono.just(snapshot);
+            }
+        }
+        return listVisibleGroups(username)
+            .flatMap(groups -> {
+                var names = groups.stream()
+                    .map(group -> group.getMetadata().getName())
+                    .toList();
+                var cached = manifests.getIfPresent(names);
+                var snapshot = cached != null ? Mono.just(cached) : buildSnapshot(groups);
+                return snapshot.doOnNext(built -> {
+                    if (generation.get() == currentGeneration) {
+                        visibleGroups.put(username, names);
+                        manifests.put(names, built);
+                    }
+                });
+            });
+    }
+
+    private Mono<List<StickerGroup>> listVisibleGroups(String username) {
+        var listOptions = ListOptions.builder()
+            .andQuery(or(equal("spec.owner", username), equal("spec.isPublic", "true")))
+            .build();
+        return client.listAll(StickerGroup.class, listOptions,
+                Sort.by("spec.priority", "metadata.name"))
+            .collectList();
+    }
+
+    private Mono<Snapshot> buildSnapshot(List<StickerGroup> groups) {
+        if (groups.isEmpty()) {
+            return Mono.fromCallable(() -> toSnapshot(new StickerManifest(List.of())));
+        }
+        var groupNames = groups.stream()
+            .map(group -> group.getMetadata().getName())
+            .toList();
+        var listOptions = ListOptions.builder()
+            .andQuery(in("spec.groupName", groupNames))
+            .build();
+        return client.listAll(Sticker.class, listOptions, Sort.unsorted())
+            .collect(Collectors.groupingBy(sticker -> sticker.getSpec().getGroupName()))
+            .map(stickersByGroup -> new StickerManifest(groups.stream()
+                .map(group -> new StickerManifest.GroupEntry(group,
+                    stickersByGroup.getOrDefault(group.getMetadata().getName(), List.of())
+                        .stream()
+                        .sorted(StickerSorter.sequenceComparator())
+                        .toList()))
+                .toList()))
+            .map(StickerManifestServiceImpl::toSnapshot);
+    }
+
+    private static Snapshot toSnapshot(StickerManifest manifest) {
+        try {
+            var body = JsonUtils.mapper().writeValueAsBytes(manifest);
+            var etag = "\"" + Hashing.sha256().hashBytes(body) + "\"";
+            return new Snapshot(etag, body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize sticker manifest", e);
+        }
+    }
+
+    @EventListener(StickerChangedEvent.class)
+    public void onStickerChanged(StickerChangedEvent event) {
+        var affectedGroups = Stream.of(event.getOldSticker(), event.getSticker())
+            .filter(Objects::nonNull)
+            .map(sticker -> sticker.getSpec().getGroupName())
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+        if (affectedGroups.isEmpty()) {
+            return;
+        }
+        generation.incrementAndGet();
+        manifests.asMap().keySet()
+            .removeIf(groupNames -> groupNames.stream().anyMatch(affectedGroups::contains));
+    }
+
+    @EventListener(StickerGroupChangedEvent.class)
+    public void onStickerGroupChanged(StickerGroupChangedEvent event) {
+        // group visibility may have changed for any user
+        generation.incrementAndGet();
+        visibleGroups.invalidateAll();
+        var affectedGroups = Stream.of(event.getOldGroup(), event.getGroup())
+            .filter(Objects::nonNull)
+            .map(group -> group.getMetadata().getName())
+            .collect(Collectors.toSet());
+        manifests.asMap().keySet()
+            .removeIf(groupNames -> groupNames.stream().anyMatch(affectedGroups::contains));
+    }
+}
@@ -0,0 +1,180 @@
+package run.halo.sticker.service.impl;
+
+import static run.halo.sticker.service.StickerOrderService.FIRST;
+import static run.halo.sticker.service.StickerOrderService.SEQUENCE_GAP;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalInt;
+import org.springframework.lang.Nullable;
+
+/**
+ * Plans the positions of stickers in memory so that a bulk reorder writes only the stickers
+ * whose group or sequence actually changes.
+ *
+ * <p>Not thread-safe, one planner serves one bulk update.
+ */
+final class StickerOrderPlanner {
+
+    /**
+     * Group name to its stickers in sequence order, for groups that stickers are placed into
+     * relative to their neighbours.
+     */
+    private final Map<String, List<Slot>> orderings = new HashMap<>();
+
+    /**
+     * Current positions of all known stickers.
+     */
+    private final Map<String, Position> originals = new HashMap<>();
+
+    /**
+     * Planned positions in planning order.
+     */
+    private final Map<String, Position> targets = new LinkedHashMap<>();
+
+    /**
+     * Adds the current position of a sticker, stickers created before sequences were assigned on
+     * upload have none.
+     */
+    void addSticker(String name, @Nullable String groupName, @Nullable Integer sequence) {
+        originals.putIfAbsent(name, new Position(groupName, sequence));
+    }
+
+    /**
+     * Adds the ordering of a group, its stickers must be given in sequence order.
+     */
+    void addOrdering(String groupName, List<String> names) {
+        var slots = new ArrayList<Slot>(names.size());
+        for (var name : names) {
+            slots.add(new Slot(name, currentPosition(name).sequence()));
+        }
+        orderings.put(groupName, slots);
+    }
+
+    Position currentPosition(String name) {
+        var target = targets.get(name);
+        return target != null ? target : Objects.requireNonNull(originals.get(name));
+    }
+
+    void place(String name, String groupName, @Nullable Integer sequence) {
+        detach(name);
+        var slots = orderings.get(groupName);
+        if (slots != null) {
+            // the sequence index sorts stickers without a sequence as 0
+            var index = 0;
+            while (index < slots.size()
+                && sortKey(slots.get(index).sequence) <= sortKey(sequence)) {
+                index++;
+            }
+            slots.add(index, new Slot(name, sequence));
+        }
+        targets.put(name, new Position(groupName, sequence));
+    }
+
+    /**
+     * Places the sticker right after another one in the group.
+     *
+     * @throws IllegalArgumentException if the other sticker is not in the group
+     */
+    void placeAfter(String name, String groupName, String after) {
+        var slots = Objects.requireNonNull(orderings.get(groupName));
+        // a rejected move must leave the ordering as it was for the rest of the plan
+        if (name.equals(after)) {
+            throw new IllegalArgumentException("Sticker " + name + " cannot follow itself");
+        }
+        if (!FIRST.equals(after) && indexOf(slots, after) < 0) {
+            throw new IllegalArgumentException(
+                "Sticker " + after + " is not in group " + groupName);
+        }
+        detach(name);
+        var index = FIRST.equals(after) ? 0 : indexOf(slots, after) + 1;
+        var previous = index > 0 ? slots.get(index - 1) : null;
+        var next = index < slots.size() ? slots.get(index) : null;
+        var slot = new Slot(name, 0);
+        slots.add(index, slot);
+        var sequence = between(previous, next);
+        if (sequence.isPresent()) {
+            slot.sequence = sequence.getAsInt();
+            targets.put(name, new Position(groupName, slot.sequence));
+        } else {
+            renumber(groupName, slots);
+        }
+    }
+
+    /**
+     * Gets the stickers whose planned position differs from the current one.
+     */
+    Map<String, Position> changes() {
+        var changes = new LinkedHashMap<String, Position>();
+        targets.forEach((name, target) -> {
+            if (!target.equals(originals.get(name))) {
+                changes.put(name, target);
+            }
+        });
+        return changes;
+    }
+
+    private void detach(String name) {
+        for (var slots : orderings.values()) {
+            slots.removeIf(slot -> slot.name.equals(name));
+        }
+    }
+
+    private void renumber(String groupName, List<Slot> slots) {
+        for (int i = 0; i < slots.size(); i++) {
+            var slot = slots.get(i);
+            slot.sequence = (i + 1) * SEQUENCE_GAP;
+            targets.put(slot.name, new Position(groupName, slot.sequence));
+        }
+    }
+
+    private static OptionalInt between(@Nullable Slot previous, @Nullable Slot next) {
+        if (previous != null && previous.sequence == null
+            || next != null && next.sequence == null) {
+            // unsequenced neighbours have no defined gap between them, renumber the group
+            return OptionalInt.empty();
+        }
+        long low = previous == null ? 0 : previous.sequence;
+        if (next == null) {
+            var sequence = low + SEQUENCE_GAP;
+            return sequence > Integer.MAX_VALUE ? OptionalInt.empty()
+                : OptionalInt.of((int) sequence);
+        }
+        long high = next.sequence;
+        if (high - low > 1) {
+            return OptionalInt.of((int) (low + (high - low) / 2));
+        }
+        return OptionalInt.empty();
+    }
+
+    private static int sortKey(@Nullable Integer sequence) {
+        return sequence == null ? 0 : sequence;
+    }
+
+    private static int indexOf(List<Slot> slots, String name) {
+        for (int i = 0; i < slots.size(); i++) {
+            if (slots.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    record Position(@Nullable String groupName, @Nullable Integer sequence) {
+    }
+
+    private static final class Slot {
+        private final String name;
+        @Nullable
+        private Integer sequence;
+
+        private Slot(String name, @Nullable Integer sequence) {
+            this.name = name;
+            this.sequence = sequence;
+        }
+    }
+}
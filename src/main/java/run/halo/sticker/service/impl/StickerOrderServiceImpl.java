@@ -0,0 +1,189 @@
+package run.halo.sticker.service.impl;
+
+import static run.halo.app.extension.index.query.QueryFactory.in;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import run.halo.app.extension.Extension;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.model.StickerGroup;
+import run.halo.sticker.pojo.enums.StickerSorter;
+import run.halo.sticker.service.StickerOrderService;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StickerOrderServiceImpl implements StickerOrderService {
+
+    private static final int MAX_PATCHES = 1000;
+    private static final int WRITE_CONCURRENCY = 8;
+
+    private final ReactiveExtensionClient client;
+
+    @Override
+    public Flux<PatchResult> apply(List<Patch> patches, String username) {
+        if (patches.size() > MAX_PATCHES) {
+            return Flux.error(new ServerWebInputException(
+                "At most " + MAX_PATCHES + " stickers can be updated at once"));
+        }
+        var names = patches.stream()
+            .map(Patch::name)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (names.isEmpty()) {
+            return Flux.empty();
+        }
+        return listByNames(Sticker.class, names)
+            .collectMap(sticker -> sticker.getMetadata().getName())
+            .flatMapMany(stickers -> {
+                var groupNames = new HashSet<String>();
+                stickers.values().forEach(sticker ->
+                    groupNames.add(StringUtils.defaultString(sticker.getSpec().getGroupName())));
+                patches.stream()
+                    .map(Patch::groupName)
+                    .filter(Objects::nonNull)
+                    .forEach(groupNames::add);
+                return listOwnedGroupNames(groupNames, username)
+                    .flatMapMany(ownedGroups -> plan(patches, stickers, ownedGroups));
+            });
+    }
+
+    private Flux<PatchResult> plan(List<Patch> patches, Map<String, Sticker> stickers,
+        Set<String> ownedGroups) {
+        var rejected = new ArrayList<PatchResult>();
+        var accepted = new ArrayList<Patch>();
+        for (var patch : patches) {
+            var sticker = stickers.get(patch.name());
+            if (sticker == null || !ownedGroups.contains(sticker.getSpec().getGroupName())) {
+                rejected.add(PatchResult.failure(patch.name(), "Sticker not found"));
+            } else if (patch.groupName() != null && !ownedGroups.contains(patch.groupName())) {
+                rejected.add(PatchResult.failure(patch.name(), "Sticker group not found"));
+            } else if (patch.sequence() != null && patch.sequence() < 0) {
+                rejected.add(PatchResult.failure(patch.name(), "Sequence must not be negative"));
+            } else {
+                accepted.add(patch);
+            }
+        }
+        // stickers are written as read, so a concurrent change fails the write instead of being
+        // overwritten by a position planned from its old state
+        var snapshots = new HashMap<>(stickers);
+        var planner = new StickerOrderPlanner();
+        stickers.values().forEach(sticker -> planner.addSticker(sticker.getMetadata().getName(),
+            sticker.getSpec().getGroupName(), sticker.getSpec().getSequence()));
+        var orderedGroups = accepted.stream()
+            .filter(patch -> patch.sequence() == null && patch.after() != null)
+            .map(patch -> targetGroup(patch, stickers))
+            .collect(Collectors.toSet());
+        return loadOrderings(planner, orderedGroups, snapshots)
+            .thenMany(Flux.defer(() -> {
+                for (var patch : accepted) {
+                    var groupName = targetGroup(patch, stickers);
+                    try {
+                        if (patch.sequence() != null) {
+                            planner.place(patch.name(), groupName, patch.sequence());
+                        } else if (patch.after() != null) {
+                            planner.placeAfter(patch.name(), groupName, patch.after());
+                        } else {
+                            planner.place(patch.name(), groupName,
+                                planner.currentPosition(patch.name()).sequence());
+                        }
+                    } catch (IllegalArgumentException e) {
+                        rejected.add(PatchResult.failure(patch.name(), e.getMessage()));
+                    }
+                }
+                var changes = planner.changes();
+                log.debug("Bulk update of {} stickers writes {} stickers", patches.size(),
+                    changes.size());
+                return Flux.fromIterable(rejected)
+                    .concatWith(Flux.fromIterable(changes.entrySet())
+                        .flatMap(change -> write(snapshots.get(change.getKey()),
+                                change.getValue()),
+                            WRITE_CONCURRENCY));
+            }));
+    }
+
+    /**
+     * Loads the current order of the groups that stickers are placed into relative to their
+     * neighbours.
+     */
+    private Mono<Void> loadOrderings(StickerOrderPlanner planner, Set<String> groupNames,
+        Map<String, Sticker> snapshots) {
+        if (groupNames.isEmpty()) {
+            return Mono.empty();
+        }
+        var listOptions = ListOptions.builder()
+            .andQuery(in("spec.groupName", groupNames))
+            .build();
+        var sort = Sort.by(StickerSorter.SEQUENCE.indexField(), "metadata.name");
+        return client.listAll(Sticker.class, listOptions, sort)
+            .collectList()
+            .doOnNext(members -> {
+                var byGroup = new HashMap<String, List<String>>();
+                groupNames.forEach(groupName -> byGroup.put(groupName, new ArrayList<>()));
+                for (var member : members) {
+                    var name = member.getMetadata().getName();
+                    snapshots.putIfAbsent(name, member);
+                    planner.addSticker(name, member.getSpec().getGroupName(),
+                        member.getSpec().getSequence());
+                    byGroup.get(member.getSpec().getGroupName()).add(name);
+                }
+                byGroup.forEach(planner::addOrdering);
+            })
+            .then();
+    }
+
+    private Mono<PatchResult> write(Sticker sticker, StickerOrderPlanner.Position target) {
+        var name = sticker.getMetadata().getName();
+        sticker.getSpec().setGroupName(target.groupName());
+        sticker.getSpec().setSequence(target.sequence());
+        return client.update(sticker)
+            .map(PatchResult::success)
+            .onErrorResume(OptimisticLockingFailureException.class, e -> {
+                log.debug("Sticker {} was changed while its position was planned", name);
+                return Mono.just(PatchResult.failure(name,
+                    "Sticker was changed concurrently, please reload and retry"));
+            })
+            .onErrorResume(e -> {
+                log.warn("Failed to update position of sticker {}", name, e);
+                return Mono.just(PatchResult.failure(name, e.getMessage()));
+            });
+    }
+
+    private Mono<Set<String>> listOwnedGroupNames(Set<String> groupNames, String username) {
+        return listByNames(StickerGroup.class, groupNames)
+            .filter(group -> group.getSpec() != null
+                && username.equals(group.getSpec().getOwner()))
+            .map(group -> group.getMetadata().getName())
+            .collect(Collectors.toSet());
+    }
+
+    private <E extends Extension> Flux<E> listByNames(Class<E> type, Set<String> names) {
+        var listOptions = ListOptions.builder()
+            .andQuery(in("metadata.name", names))
+            .build();
+        return client.listAll(type, listOptions, Sort.unsorted());
+    }
+
+    private static String targetGroup(Patch patch, Map<String, Sticker> stickers) {
+        return patch.groupName() != null ? patch.groupName()
+            : stickers.get(patch.name()).getSpec().getGroupName();
+    }
+}
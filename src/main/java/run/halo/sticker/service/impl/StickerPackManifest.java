@@ -0,0 +1,57 @@
+package run.halo.sticker.service.impl;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.lang.Nullable;
+
+/**
+ * The {@code manifest.json} of a sticker pack, carrying what file names cannot: display names,
+ * descriptions and the order of the stickers.
+ *
+ * @param group the exported group
+ * @param stickers the stickers in order
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+record StickerPackManifest(@Nullable Group group, @Nullable List<Entry> stickers) {
+
+    static final String ENTRY_NAME = "manifest.json";
+
+    static boolean isManifestEntry(String entryName) {
+        return ENTRY_NAME.equals(entryName) || entryName.endsWith("/" + ENTRY_NAME);
+    }
+
+    /**
+     * Maps the file name of every sticker to its position in the manifest.
+     */
+    Map<String, Integer> positions() {
+        var positions = new HashMap<String, Integer>();
+        if (stickers != null) {
+            for (int i = 0; i < stickers.size(); i++) {
+                var file = stickers.get(i).file();
+                if (StringUtils.isNotBlank(file)) {
+                    positions.putIfAbsent(StringUtils.substringAfterLast("/" + file, "/"), i);
+                }
+            }
+        }
+        return positions;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Group(@Nullable String displayName, @Nullable String description) {
+    }
+
+    /**
+     * A sticker of the pack.
+     *
+     * @param file the entry name of the sticker file
+     * @param sequence the sequence the sticker had in its group, informational only since the
+     * position in the manifest gives the order
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Entry(String file, @Nullable String displayName, @Nullable String description,
+                 @Nullable Integer sequence) {
+    }
+}
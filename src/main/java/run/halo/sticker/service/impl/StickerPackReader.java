@@ -0,0 +1,84 @@
+package run.halo.sticker.service.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.ZipInputStream;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import run.halo.sticker.infra.DataBufferInputStream;
+
+/**
+ * Reads the entries of a ZIP sticker pack as a stream.
+ *
+ * <p>The archive is parsed on the fly from its buffers, and each entry's content is exposed as a
+ * flux that reads directly from the archive. Neither the archive nor an entry is ever held in
+ * memory as a whole. Because entries share the underlying stream, the content of an entry must
+ * be consumed (or dropped) before the next entry is requested, e.g. by {@code concatMap}.
+ */
+final class StickerPackReader {
+
+    private static final int PREFETCH = 4;
+    private static final int CHUNK_SIZE = 8192;
+
+    private StickerPackReader() {
+    }
+
+    static Flux<PackEntry> entries(Flux<DataBuffer> archive) {
+        return Flux.using(
+                () -> new ZipInputStream(new DataBufferInputStream(archive, PREFETCH)),
+                zip -> Flux.<PackEntry>generate(sink -> {
+                    try {
+                        var entry = zip.getNextEntry();
+                        while (entry != null && entry.isDirectory()) {
+                            entry = zip.getNextEntry();
+                        }
+                        if (entry == null) {
+                            sink.complete();
+                            return;
+                        }
+                        sink.next(new PackEntry(entry.getName(), content(zip)));
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                }),
+                StickerPackReader::closeQuietly)
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static Flux<DataBuffer> content(ZipInputStream zip) {
+        return Flux.<DataBuffer>generate(sink -> {
+                var bytes = new byte[CHUNK_SIZE];
+                try {
+                    int read = zip.read(bytes);
+                    if (read < 0) {
+                        sink.complete();
+                        return;
+                    }
+                    sink.next(DefaultDataBufferFactory.sharedInstance
+                        .wrap(ByteBuffer.wrap(bytes, 0, read)));
+                } catch (IOException e) {
+                    sink.error(e);
+                }
+            })
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static void closeQuietly(ZipInputStream zip) {
+        try {
+            zip.close();
+        } catch (IOException e) {
+            // the underlying stream only releases buffers on close
+        }
+    }
+
+    /**
+     * A file entry of a sticker pack.
+     *
+     * @param name the entry path inside the archive
+     * @param content the entry content, readable only until the next entry is requested
+     */
+    record PackEntry(String name, Flux<DataBuffer> content) {
+    }
+}
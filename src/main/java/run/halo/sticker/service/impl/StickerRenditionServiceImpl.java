@@ -0,0 +1,231 @@
+package run.halo.sticker.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.imageio.ImageIO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import run.halo.app.core.extension.attachment.Attachment;
+import run.halo.app.extension.ExtensionUtil;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.sticker.infra.AttachmentContentReader;
+import run.halo.sticker.infra.DiskLruCache;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.service.StickerRenditionService;
+
+/**
+ * Generates thumbnails lazily and keeps them in a disk cache under the temporary directory.
+ *
+ * <p>The JDK ships no WebP encoder, so thumbnails are encoded as PNG. Decoding and scaling run
+ * on a dedicated bounded scheduler; when its queue is full the original file is served instead
+ * of piling up work.
+ */
+@Slf4j
+@Component
+public class StickerRenditionServiceImpl implements StickerRenditionService, DisposableBean {
+
+    private static final Path CACHE_DIRECTORY =
+        Path.of(System.getProperty("java.io.tmpdir"), "halo-plugin-sticker", "renditions");
+    private static final DataSize MAX_CACHE_SIZE = DataSize.ofMegabytes(256L);
+    private static final DataSize MAX_SOURCE_SIZE = DataSize.ofMegabytes(8L);
+    private static final long MAX_SOURCE_PIXELS = 4096L * 4096L;
+    private static final Duration RENDER_TIMEOUT = Duration.ofSeconds(30);
+    private static final int MAX_QUEUED_RENDERS = 64;
+
+    private final ReactiveExtensionClient client;
+    private final AttachmentContentReader contentReader;
+    private final DiskLruCache cache;
+    private final Scheduler scheduler;
+
+    /**
+     * In-flight renders by cache key, so concurrent requests for one thumbnail render once.
+     */
+    private final ConcurrentMap<String, Mono<Optional<Path>>> rendering =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Cache keys known to have no rendition, to avoid downloading those sources again.
+     */
+    private final Cache<String, Boolean> passthrough = CacheBuilder.newBuilder()
+        .maximumSize(10_000)
+        .build();
+
+    public StickerRenditionServiceImpl(ReactiveExtensionClient client,
+        AttachmentContentReader contentReader) {
+        this.client = client;
+        this.contentReader = contentReader;
+        this.cache = new DiskLruCache(CACHE_DIRECTORY, MAX_CACHE_SIZE.toBytes());
+        this.scheduler = Schedulers.newBoundedElastic(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), MAX_QUEUED_RENDERS,
+            "sticker-rendition");
+    }
+
+    @Override
+    public Mono<Rendition> getThumbnail(String stickerName, int size) {
+        if (!THUMBNAIL_SIZES.contains(size)) {
+            return Mono.error(new IllegalArgumentException("Unsupported thumbnail size " + size));
+        }
+        return client.fetch(Sticker.class, stickerName)
+            .flatMap(sticker -> {
+                var originalUrl = sticker.getSpec().getUrl();
+                var fallback = StringUtils.isBlank(originalUrl)
+                    ? Mono.<Rendition>empty() : Mono.just(Rendition.original(originalUrl));
+                var attachmentName = sticker.getSpec().getAttachmentName();
+                if (StringUtils.isBlank(attachmentName)) {
+                    return fallback;
+                }
+                return client.fetch(Attachment.class, attachmentName)
+                    .filter(attachment -> !ExtensionUtil.isDeleted(attachment))
+                    .filter(StickerRenditionServiceImpl::isScalable)
+                    .flatMap(attachment -> getThumbnail(attachment, size)
+                        .map(file -> Rendition.of(file, StickerRenditionService.thumbnailVersion(
+                            attachmentName, attachment.getMetadata().getVersion()))))
+                    .switchIfEmpty(fallback);
+            });
+    }
+
+    private Mono<Path> getThumbnail(Attachment attachment, int size) {
+        var key = String.format("%s-%d-%d.png", attachment.getMetadata().getName(),
+            attachment.getMetadata().getVersion(), size);
+        if (passthrough.getIfPresent(key) != null) {
+            return Mono.empty();
+        }
+        var cached = cache.get(key);
+        if (cached.isPresent()) {
+            return Mono.just(cached.get());
+        }
+        return rendering.computeIfAbsent(key, k -> render(attachment, size, k)
+                .doFinally(signal -> rendering.remove(k))
+                .cache())
+            .flatMap(Mono::justOrEmpty);
+    }
+
+    private Mono<Optional<Path>> render(Attachment attachment, int size, String key) {
+        return DataBufferUtils.join(contentReader.read(attachment),
+                (int) MAX_SOURCE_SIZE.toBytes())
+            .publishOn(scheduler)
+            .map(buffer -> {
+                try (var input = buffer.asInputStream(true)) {
+                    var thumbnail = scaleDown(input, size);
+                    if (thumbnail.isEmpty()) {
+                        passthrough.put(key, Boolean.TRUE);
+                        return Optional.<Path>empty();
+                    }
+                    return Optional.of(cache.put(key, thumbnail.get()));
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to render thumbnail " + key, e);
+                }
+            })
+            .timeout(RENDER_TIMEOUT)
+            .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+            .onErrorResume(e -> {
+                log.warn("Failed to render thumbnail of attachment({}), serve the original",
+                    attachment.getMetadata().getName(), e);
+                return Mono.just(Optional.empty());
+            })
+            .defaultIfEmpty(Optional.empty());
+    }
+
+    /**
+     * Animated GIFs would lose their animation, so only still image types are scaled.
+     */
+    private static boolean isScalable(Attachment attachment) {
+        var mediaType = attachment.getSpec().getMediaType();
+        if (StringUtils.isBlank(mediaType)) {
+            return false;
+        }
+        try {
+            var type = MediaType.parseMediaType(mediaType);
+            return "image".equals(type.getType())
+                && !MediaType.IMAGE_GIF.isCompatibleWith(type)
+                && !type.getSubtype().contains("svg");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decodes the image and scales it down to fit into a square of the given size. Smaller
+     * images are only re-encoded, so that every still sticker can be a sprite sheet tile.
+     *
+     * @return PNG bytes, or empty if the image cannot be decoded
+     */
+    static Optional<byte[]> scaleDown(InputStream source, int size) throws IOException {
+        try (var input = ImageIO.createImageInputStream(source)) {
+            var readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return Optional.empty();
+            }
+            var reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                var width = reader.getWidth(0);
+                var height = reader.getHeight(0);
+                if ((long) width * height > MAX_SOURCE_PIXELS) {
+                    return Optional.empty();
+                }
+                var image = reader.read(0);
+                if (width > size || height > size) {
+                    var scale = (double) size / Math.max(width, height);
+                    image = scale(image, Math.max(1, (int) Math.round(width * scale)),
+                        Math.max(1, (int) Math.round(height * scale)));
+                }
+                var output = new ByteArrayOutputStream();
+                ImageIO.write(image, "png", output);
+                return Optional.of(output.toByteArray());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Halves the image step by step, since a single bilinear pass over a large ratio aliases.
+     */
+    private static BufferedImage scale(BufferedImage source, int targetWidth, int targetHeight) {
+        var current = source;
+        var width = source.getWidth();
+        var height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            var next = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            var graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING,
+                    RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+}
@@ -0,0 +1,201 @@
+package run.halo.sticker.service.impl;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import run.halo.app.extension.ExtensionUtil;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.sticker.event.StickerChangedEvent;
+import run.halo.sticker.infra.WatchedIndexLoader;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.service.StickerSearchService;
+
+/**
+ * An in-memory n-gram index over sticker display names and descriptions.
+ *
+ * <p>Every field is indexed by its unigrams and bigrams, which works for CJK text without word
+ * segmentation. A keyword is looked up by intersecting the posting sets of its bigrams and the
+ * few remaining candidates are verified by substring match. The index is loaded once on
+ * startup and then kept up to date from {@link StickerChangedEvent}s.
+ */
+@Component
+public class StickerSearchServiceImpl implements StickerSearchService, InitializingBean,
+    DisposableBean {
+
+    private final ReactiveExtensionClient client;
+
+    /**
+     * Sticker name to the normalized texts it is searchable by.
+     */
+    private final Map<String, List<String>> documents = new ConcurrentHashMap<>();
+
+    /**
+     * Gram to the names of the stickers containing it.
+     */
+    private final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+
+    private final WatchedIndexLoader loader = new WatchedIndexLoader("sticker search index");
+
+    public StickerSearchServiceImpl(ReactiveExtensionClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // keyword search falls back to the extension store until the index is loaded
+        loader.load(client.listAll(Sticker.class, new ListOptions(), Sort.unsorted())
+            .filter(sticker -> !ExtensionUtil.isDeleted(sticker))
+            .doOnNext(sticker -> {
+                var name = sticker.getMetadata().getName();
+                synchronized (this) {
+                    if (!loader.isStale(name)) {
+                        index(sticker);
+                    }
+                }
+            }));
+    }
+
+    @Override
+    public void destroy() {
+        loader.dispose();
+    }
+
+    @Override
+    public Optional<Set<String>> search(String keyword) {
+        if (!loader.isReady()) {
+            return Optional.empty();
+        }
+        var normalized = normalize(keyword);
+        if (normalized.isEmpty()) {
+            return Optional.of(Set.of());
+        }
+        var candidates = lookupCandidates(normalized);
+        var result = new HashSet<String>();
+        for (var name : candidates) {
+            var texts = documents.get(name);
+            if (texts != null && texts.stream().anyMatch(text -> text.contains(normalized))) {
+                result.add(name);
+            }
+        }
+        return Optional.of(result);
+    }
+
+    private Set<String> lookupCandidates(String keyword) {
+        var grams = keyword.length() == 1 ? List.of(keyword) : bigrams(keyword);
+        var postingSets = new ArrayList<Set<String>>(grams.size());
+        for (var gram : grams) {
+            var posting = postings.get(gram);
+            if (posting == null) {
+                return Set.of();
+            }
+            postingSets.add(posting);
+        }
+        // intersect starting from the rarest gram
+        postingSets.sort(Comparator.comparingInt(Set::size));
+        var candidates = new HashSet<>(postingSets.get(0));
+        for (int i = 1; i < postingSets.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(postingSets.get(i));
+        }
+        return candidates;
+    }
+
+    @EventListener(StickerChangedEvent.class)
+    public void onStickerChanged(StickerChangedEvent event) {
+        synchronized (this) {
+            if (event.isRemoved()) {
+                var removed = event.getSticker() != null ? event.getSticker()
+                    : event.getOldSticker();
+                if (removed != null) {
+                    var name = removed.getMetadata().getName();
+                    unindex(name);
+                    loader.changed(name);
+                }
+                return;
+            }
+            index(event.getSticker());
+            loader.changed(event.getSticker().getMetadata().getName());
+        }
+    }
+
+    private void index(Sticker sticker) {
+        var name = sticker.getMetadata().getName();
+        unindex(name);
+        var spec = sticker.getSpec();
+        var texts = new ArrayList<String>(3);
+        if (spec != null) {
+            var displayName = normalize(spec.getDisplayName());
+            addText(texts, displayName);
+            addText(texts, normalize(spec.getDescription()));
+            if (!displayName.isEmpty()) {
+                addText(texts, PinyinInitials.of(displayName));
+            }
+        }
+        if (texts.isEmpty()) {
+            return;
+        }
+        documents.put(name, List.copyOf(texts));
+        for (var text : texts) {
+            for (var gram : grams(text)) {
+                postings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(name);
+            }
+        }
+    }
+
+    private void unindex(String name) {
+        var texts = documents.remove(name);
+        if (texts == null) {
+            return;
+        }
+        for (var text : texts) {
+            for (var gram : grams(text)) {
+                postings.computeIfPresent(gram, (key, names) -> {
+                    names.remove(name);
+                    return names.isEmpty() ? null : names;
+                });
+            }
+        }
+    }
+
+    private static void addText(List<String> texts, String text) {
+        if (!text.isEmpty() && !texts.contains(text)) {
+            texts.add(text);
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        var grams = new HashSet<String>();
+        text.codePoints().forEach(codePoint -> grams.add(Character.toString(codePoint)));
+        grams.addAll(bigrams(text));
+        return grams;
+    }
+
+    private static List<String> bigrams(String text) {
+        var codePoints = text.codePoints().toArray();
+        var bigrams = new ArrayList<String>(Math.max(0, codePoints.length - 1));
+        for (int i = 0; i + 1 < codePoints.length; i++) {
+            bigrams.add(new String(codePoints, i, 2));
+        }
+        return bigrams;
+    }
+
+    private static String normalize(String text) {
+        if (StringUtils.isBlank(text)) {
+            return "";
+        }
+        return Normalizer.normalize(text.strip(), Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+}
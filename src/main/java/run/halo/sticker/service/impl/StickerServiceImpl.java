@@ -1,30 +1,70 @@
 package run.halo.sticker.service.impl;
 
-import java.util.function.Function;
+import static run.halo.app.extension.index.query.QueryFactory.and;
+import static run.halo.app.extension.index.query.QueryFactory.equal;
+import static run.halo.app.extension.index.query.QueryFactory.greaterThan;
+import static run.halo.app.extension.index.query.QueryFactory.or;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Component;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import run.halo.app.extension.ListOptions;
 import run.halo.app.extension.ListResult;
+import run.halo.app.extension.PageRequestImpl;
 import run.halo.app.extension.ReactiveExtensionClient;
 import run.halo.sticker.model.Sticker;
+import run.halo.sticker.model.StickerGroup;
+import run.halo.sticker.pojo.query.OrdinalIndexKey;
+import run.halo.sticker.pojo.query.StickerCursor;
 import run.halo.sticker.pojo.query.StickerQuery;
+import run.halo.sticker.pojo.vo.CursorListResult;
+import run.halo.sticker.reconciler.StickerPermalinkResolver;
+import run.halo.sticker.service.StickerSearchService;
 import run.halo.sticker.service.StickerService;
 
 @Component
 public class StickerServiceImpl implements StickerService {
 
+    private static final Sort CURSOR_SORT = Sort.by("spec.sequence", "metadata.name");
+    private static final int PERMALINK_CACHE_SIZE = 1024;
+    private static final Duration PERMALINK_CACHE_TTL = Duration.ofMinutes(1);
+
     private final ReactiveExtensionClient client;
+    private final StickerSearchService searchService;
+    private final StickerPermalinkResolver permalinkResolver;
 
-    public StickerServiceImpl(ReactiveExtensionClient client) {
+    /**
+     * Permalinks resolved for listed stickers the reconciler has not given a URL yet, by
+     * attachment name, so that polling a page while it is being reconciled resolves each
+     * attachment once.
+     */
+    private final Cache<String, String> permalinks = CacheBuilder.newBuilder()
+        .maximumSize(PERMALINK_CACHE_SIZE)
+        .expireAfterWrite(PERMALINK_CACHE_TTL)
+        .build();
+
+    public StickerServiceImpl(ReactiveExtensionClient client,
+        StickerSearchService searchService, StickerPermalinkResolver permalinkResolver) {
         this.client = client;
+        this.searchService = searchService;
+        this.permalinkResolver = permalinkResolver;
     }
 
     @Override
     public Mono<ListResult<Sticker>> listStickers(StickerQuery query) {
-        return client.listBy(Sticker.class, query.toListOptions(), query.toPageRequest())
-            .flatMap(listResult -> Flux.fromStream(listResult.get().map(this::enrichSticker))
-                .concatMap(Function.identity())
-                .collectList()
+        var listOptions = toListOptions(query);
+        if (listOptions.isEmpty()) {
+            return Mono.just(new ListResult<>(query.getPage(), query.getSize(), 0, List.of()));
+        }
+        return client.listBy(Sticker.class, listOptions.get(), query.toPageRequest())
+            .flatMap(listResult -> enrichStickers(listResult.getItems())
                 .map(enrichedStickers -> new ListResult<>(
                     listResult.getPage(),
                     listResult.getSize(),
@@ -34,7 +74,113 @@ public class StickerServiceImpl implements StickerService {
             );
     }
 
-    private Mono<Sticker> enrichSticker(Sticker sticker) {
-        return Mono.just(sticker);
+    @Override
+    public Mono<CursorListResult<Sticker>> listStickersByCursor(StickerQuery query) {
+        var listOptions = toListOptions(query);
+        if (listOptions.isEmpty()) {
+            return Mono.just(new CursorListResult<>(List.of(), null));
+        }
+        var builder = ListOptions.builder(listOptions.get());
+        var cursor = query.getCursor();
+        if (cursor != null) {
+            var sequence = OrdinalIndexKey.of(cursor.sequence());
+            builder.andQuery(or(greaterThan("spec.sequence", sequence),
+                and(equal("spec.sequence", sequence),
+                    greaterThan("metadata.name", cursor.name()))));
+        }
+        var limit = query.getLimit();
+        // one extra item tells whether there is a next page without counting the rest
+        var pageRequest = PageRequestImpl.of(1, limit + 1, CURSOR_SORT);
+        return client.listBy(Sticker.class, builder.build(), pageRequest)
+            .flatMap(listResult -> {
+                var items = listResult.getItems();
+                var hasMore = items.size() > limit;
+                return enrichStickers(hasMore ? items.subList(0, limit) : items)
+                    .map(stickers -> {
+                        var nextCursor = hasMore && !stickers.isEmpty()
+                            ? StickerCursor.after(stickers.get(stickers.size() - 1)).encode()
+                            : null;
+                        return new CursorListResult<>(stickers, nextCursor);
+                    });
+            });
+    }
+
+    /**
+     * Builds the list options of the query, matching the keyword through the search index if
+     * it is ready.
+     *
+     * @return the list options, or empty if the keyword matches no sticker
+     */
+    private Optional<ListOptions> toListOptions(StickerQuery query) {
+        var keyword = query.getKeyword();
+        if (keyword != null) {
+            var matches = searchService.search(keyword);
+            if (matches.isPresent()) {
+                return matches.get().isEmpty() ? Optional.empty()
+                    : Optional.of(query.toListOptions(matches.get()));
+            }
+        }
+        return Optional.of(query.toListOptions());
+    }
+
+    @Override
+    public Mono<Sticker> deleteSticker(String name, String username) {
+        return client.fetch(Sticker.class, name)
+            .filterWhen(sticker -> Mono.justOrEmpty(sticker.getSpec().getGroupName())
+                .flatMap(groupName -> client.fetch(StickerGroup.class, groupName))
+                .map(group -> group.getSpec() != null
+                    && username.equals(group.getSpec().getOwner()))
+                .defaultIfEmpty(false))
+            .flatMap(client::delete);
+    }
+
+    /**
+     * Fills in the URL of the stickers on a page that the reconciler has not resolved yet.
+     *
+     * <p>The whole page is enriched at once: the missing attachments are fetched with one
+     * query and their permalinks resolved concurrently, so a page costs a constant number of
+     * store round trips whatever its size. Stickers keep their order.
+     *
+     * @param stickers the stickers of a page
+     * @return the same stickers, with URLs filled in where they could be resolved
+     */
+    private Mono<List<Sticker>> enrichStickers(List<Sticker> stickers) {
+        var unresolved = new LinkedHashSet<String>();
+        for (var sticker : stickers) {
+            var spec = sticker.getSpec();
+            if (isMissingUrl(spec)) {
+                var permalink = permalinks.getIfPresent(spec.getAttachmentName());
+                if (permalink != null) {
+                    spec.setUrl(permalink);
+                } else {
+                    unresolved.add(spec.getAttachmentName());
+                }
+            }
+        }
+        if (unresolved.isEmpty()) {
+            return Mono.just(stickers);
+        }
+        return permalinkResolver.resolveAll(unresolved)
+            .filter(resolution -> resolution.state() == StickerPermalinkResolver.State.RESOLVED)
+            .collectMap(StickerPermalinkResolver.Resolution::attachmentName,
+                StickerPermalinkResolver.Resolution::permalink)
+            .map(resolved -> {
+                permalinks.putAll(resolved);
+                for (var sticker : stickers) {
+                    var spec = sticker.getSpec();
+                    if (isMissingUrl(spec)) {
+                        var permalink = resolved.get(spec.getAttachmentName());
+                        if (permalink != null) {
+                            spec.setUrl(permalink);
+                        }
+                    }
+                }
+                return stickers;
+            });
+    }
+
+    private static boolean isMissingUrl(Sticker.StickerSpec spec) {
+        return spec != null && StringUtils.isBlank(spec.getUrl())
+            && StringUtils.isNotBlank(spec.getAttachmentName());
     }
 }
\ No newline at end of file
@@ -0,0 +1,349 @@
+package run.halo.sticker.service.impl;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
+import run.halo.app.extension.ExtensionUtil;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.sticker.event.StickerChangedEvent;
+import run.halo.sticker.event.StickerGroupChangedEvent;
+import run.halo.sticker.infra.WatchedIndexLoader;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.model.StickerGroup;
+import run.halo.sticker.service.StickerShortcodeService;
+
+/**
+ * An in-memory shortcode table over the stickers of public groups.
+ *
+ * <p>Shortcodes are delimited by colons, so expansion needs no multi-pattern automaton: a
+ * single pass over the HTML finds each {@code :candidate:} and resolves it with one hash
+ * lookup, whatever the number of stickers. The table is loaded once on startup and then kept
+ * up to date from {@link StickerChangedEvent}s and {@link StickerGroupChangedEvent}s.
+ *
+ * <p>Only shortcodes set explicitly in {@code spec.shortcode} are expanded, never ones derived
+ * from file names, since anyone owning a public group could otherwise rewrite ordinary text of
+ * every post. Shortcodes need a letter and at least {@link #MIN_SHORTCODE_LENGTH} characters,
+ * so that {@code 12:30:00} never matches. When several stickers share a shortcode, the sticker
+ * with the smallest name wins, so that the result does not depend on the order stickers were
+ * loaded in.
+ */
+@Component
+public class StickerShortcodeServiceImpl implements StickerShortcodeService, InitializingBean,
+    DisposableBean {
+
+    static final int MIN_SHORTCODE_LENGTH = 3;
+    static final int MAX_SHORTCODE_LENGTH = 64;
+
+    private static final Set<String> RAW_TEXT_ELEMENTS =
+        Set.of("code", "pre", "script", "style", "textarea");
+
+    private static final String IMAGE_STYLE = "display: inline-block; vertical-align: baseline; "
+        + "height: 3em; width: auto; margin: 0 0.1em;";
+
+    private final ReactiveExtensionClient client;
+
+    /**
+     * Sticker name to its shortcode entry, whether or not its group is public.
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Shortcode to the URLs of the public stickers having it, keyed by sticker name.
+     */
+    private final Map<String, NavigableMap<String, String>> shortcodes =
+        new ConcurrentHashMap<>();
+
+    private final Set<String> publicGroups = ConcurrentHashMap.newKeySet();
+
+    private final WatchedIndexLoader loader = new WatchedIndexLoader("sticker shortcodes");
+
+    public StickerShortcodeServiceImpl(ReactiveExtensionClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        loader.load(client.listAll(StickerGroup.class, new ListOptions(), Sort.unsorted())
+            .filter(group -> !ExtensionUtil.isDeleted(group))
+            .doOnNext(group -> {
+                synchronized (this) {
+                    if (!loader.isStale(groupKey(group))) {
+                        updateGroup(group.getMetadata().getName(), isPublic(group));
+                    }
+                }
+            })
+            .thenMany(client.listAll(Sticker.class, new ListOptions(), Sort.unsorted()))
+            .filter(sticker -> !ExtensionUtil.isDeleted(sticker))
+            .doOnNext(sticker -> {
+                var name = sticker.getMetadata().getName();
+                synchronized (this) {
+                    if (!loader.isStale(name)) {
+                        index(sticker);
+                    }
+                }
+            }));
+    }
+
+    @Override
+    public void destroy() {
+        loader.dispose();
+    }
+
+    @Override
+    public String expand(String html) {
+        if (!loader.isReady() || html == null || shortcodes.isEmpty() || html.indexOf(':') < 0) {
+            return html;
+        }
+        StringBuilder result = null;
+        int copied = 0;
+        int rawTextDepth = 0;
+        int length = html.length();
+        int i = 0;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                int end = html.indexOf('>', i + 1);
+                if (end < 0) {
+                    break;
+                }
+                rawTextDepth = Math.max(0, rawTextDepth + rawTextDelta(html, i + 1, end));
+                i = end + 1;
+                continue;
+            }
+            if (c != ':' || rawTextDepth > 0) {
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < length && end - i <= MAX_SHORTCODE_LENGTH
+                && isShortcodeChar(html.charAt(end))) {
+                end++;
+            }
+            if (end == i + 1 || end >= length || html.charAt(end) != ':') {
+                // the character stopping the scan cannot start a shortcode other than a colon
+                i = end;
+                continue;
+            }
+            var shortcode = normalize(html.substring(i + 1, end));
+            var url = shortcode == null ? null : lookup(shortcode);
+            if (url == null) {
+                // the closing colon may open the next shortcode
+                i = end;
+                continue;
+            }
+            if (result == null) {
+                result = new StringBuilder(length + 256);
+            }
+            result.append(html, copied, i);
+            appendImage(result, shortcode, url);
+            copied = end + 1;
+            i = end + 1;
+        }
+        if (result == null) {
+            return html;
+        }
+        return result.append(html, copied, length).toString();
+    }
+
+    @Nullable
+    private String lookup(String shortcode) {
+        var ranked = shortcodes.get(shortcode);
+        if (ranked == null) {
+            return null;
+        }
+        var first = ranked.firstEntry();
+        return first == null ? null : first.getValue();
+    }
+
+    private static void appendImage(StringBuilder result, String shortcode, String url) {
+        var alt = HtmlUtils.htmlEscape(":" + shortcode + ":");
+        result.append("<img data-sticker src=\"").append(HtmlUtils.htmlEscape(url))
+            .append("\" alt=\"").append(alt)
+            .append("\" title=\"").append(alt)
+            .append("\" loading=\"lazy\" style=\"").append(IMAGE_STYLE).append("\">");
+    }
+
+    /**
+     * Returns {@code 1} for an opening and {@code -1} for a closing tag of an element whose
+     * text is never expanded, {@code 0} for any other tag.
+     */
+    private static int rawTextDelta(String html, int start, int end) {
+        int delta = 1;
+        if (start < end && html.charAt(start) == '/') {
+            delta = -1;
+            start++;
+        }
+        int nameEnd = start;
+        while (nameEnd < end && Character.isLetter(html.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd == start || nameEnd - start > 8) {
+            return 0;
+        }
+        var name = html.substring(start, nameEnd).toLowerCase(Locale.ROOT);
+        if (!RAW_TEXT_ELEMENTS.contains(name)) {
+            return 0;
+        }
+        // a self-closing raw text element has no content
+        return delta > 0 && html.charAt(end - 1) == '/' ? 0 : delta;
+    }
+
+    private static boolean isShortcodeChar(char c) {
+        return c != ':' && c != '<' && c != '>' && c != '&' && c != '"' && c != '\''
+            && !Character.isWhitespace(c);
+    }
+
+    @EventListener(StickerChangedEvent.class)
+    public void onStickerChanged(StickerChangedEvent event) {
+        synchronized (this) {
+            if (event.isRemoved()) {
+                var removed = event.getSticker() != null ? event.getSticker()
+                    : event.getOldSticker();
+                if (removed != null) {
+                    var name = removed.getMetadata().getName();
+                    unindex(name);
+                    loader.changed(name);
+                }
+                return;
+            }
+            index(event.getSticker());
+            loader.changed(event.getSticker().getMetadata().getName());
+        }
+    }
+
+    @EventListener(StickerGroupChangedEvent.class)
+    public void onStickerGroupChanged(StickerGroupChangedEvent event) {
+        synchronized (this) {
+            if (event.isRemoved()) {
+                var removed = event.getGroup() != null ? event.getGroup() : event.getOldGroup();
+                if (removed != null) {
+                    updateGroup(removed.getMetadata().getName(), false);
+                    loader.changed(groupKey(removed));
+                }
+                return;
+            }
+            var group = event.getGroup();
+            updateGroup(group.getMetadata().getName(), isPublic(group));
+            loader.changed(groupKey(group));
+        }
+    }
+
+    private void updateGroup(String groupName, boolean isPublic) {
+        boolean changed = isPublic ? publicGroups.add(groupName)
+            : publicGroups.remove(groupName);
+        if (!changed) {
+            return;
+        }
+        for (var entry : entries.values()) {
+            if (groupName.equals(entry.groupName())) {
+                if (isPublic) {
+                    publish(entry);
+                } else {
+                    unpublish(entry);
+                }
+            }
+        }
+    }
+
+    private void index(Sticker sticker) {
+        var name = sticker.getMetadata().getName();
+        unindex(name);
+        var spec = sticker.getSpec();
+        if (spec == null || StringUtils.isAnyBlank(spec.getGroupName(), spec.getUrl())) {
+            return;
+        }
+        var shortcode = normalize(spec.getShortcode());
+        if (shortcode == null) {
+            return;
+        }
+        var entry = new Entry(name, spec.getGroupName(), shortcode, spec.getUrl());
+        entries.put(name, entry);
+        if (publicGroups.contains(entry.groupName())) {
+            publish(entry);
+        }
+    }
+
+    private void unindex(String name) {
+        var entry = entries.remove(name);
+        if (entry != null) {
+            unpublish(entry);
+        }
+    }
+
+    private void publish(Entry entry) {
+        shortcodes.computeIfAbsent(entry.shortcode(), key -> new ConcurrentSkipListMap<>())
+            .put(entry.name(), entry.url());
+    }
+
+    private void unpublish(Entry entry) {
+        shortcodes.computeIfPresent(entry.shortcode(), (key, ranked) -> {
+            ranked.remove(entry.name());
+            return ranked.isEmpty() ? null : ranked;
+        });
+    }
+
+    private static boolean isPublic(StickerGroup group) {
+        return group.getSpec() != null && Boolean.TRUE.equals(group.getSpec().getIsPublic());
+    }
+
+    private static String groupKey(StickerGroup group) {
+        return "group:" + group.getMetadata().getName();
+    }
+
+    /**
+     * Normalizes a shortcode the way references to it are looked up: NFKC, lower case and
+     * whitespace runs replaced by underscores, dropping characters that cannot appear in a
+     * reference.
+     *
+     * @return the normalized shortcode, or {@code null} if it is too short or too long, or has
+     * no letter
+     */
+    @Nullable
+    static String normalize(@Nullable String text) {
+        if (StringUtils.isBlank(text)) {
+            return null;
+        }
+        var normalized = Normalizer.normalize(text.strip(), Normalizer.Form.NFKC)
+            .toLowerCase(Locale.ROOT);
+        var shortcode = new StringBuilder(normalized.length());
+        boolean whitespace = false;
+        boolean letter = false;
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            letter |= Character.isLetter(c);
+            if (Character.isWhitespace(c)) {
+                whitespace = true;
+                continue;
+            }
+            if (!isShortcodeChar(c)) {
+                continue;
+            }
+            if (whitespace && !shortcode.isEmpty()) {
+                shortcode.append('_');
+            }
+            whitespace = false;
+            shortcode.append(c);
+        }
+        if (!letter || shortcode.length() < MIN_SHORTCODE_LENGTH
+            || shortcode.length() > MAX_SHORTCODE_LENGTH) {
+            return null;
+        }
+        return shortcode.toString();
+    }
+
+    private record Entry(String name, String groupName, String shortcode, String url) {
+    }
+}
@@ -0,0 +1,227 @@
+package run.halo.sticker.service.impl;
+
+import static run.halo.app.extension.index.query.QueryFactory.equal;
+
+import com.google.common.hash.Hashing;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.imageio.ImageIO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.infra.utils.JsonUtils;
+import run.halo.sticker.infra.DiskLruCache;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.pojo.enums.StickerSorter;
+import run.halo.sticker.pojo.vo.StickerSpriteSheet;
+import run.halo.sticker.service.StickerRenditionService;
+import run.halo.sticker.service.StickerSpriteService;
+
+/**
+ * Builds sprite sheets from sticker thumbnails and caches them on disk by group content hash.
+ *
+ * <p>The hash covers the sticker order and the attachment each sticker was resolved from by
+ * {@code StickerReconciler}, so adding, removing, reordering or replacing a sticker yields a new
+ * sheet on the next request while unchanged groups are served straight from disk.
+ */
+@Slf4j
+@Component
+public class StickerSpriteServiceImpl implements StickerSpriteService, DisposableBean {
+
+    private static final Path CACHE_DIRECTORY =
+        Path.of(System.getProperty("java.io.tmpdir"), "halo-plugin-sticker", "sprites");
+    private static final DataSize MAX_CACHE_SIZE = DataSize.ofMegabytes(128L);
+    private static final int TILE_SIZE = 64;
+    private static final int COLUMNS = 8;
+    private static final int MAX_TILES = 256;
+    private static final int TILE_CONCURRENCY = 4;
+    private static final String IMAGE_URL_TEMPLATE =
+        "/apis/sticker.api.halo.run/v1alpha1/stickerGroups/%s/sprite-image?hash=%s";
+
+    private final ReactiveExtensionClient client;
+    private final StickerRenditionService renditionService;
+    private final DiskLruCache cache;
+    private final Scheduler scheduler;
+
+    /**
+     * In-flight builds by cache key, so concurrent pickers of one group build once.
+     */
+    private final ConcurrentMap<String, Mono<StickerSpriteSheet>> building =
+        new ConcurrentHashMap<>();
+
+    public StickerSpriteServiceImpl(ReactiveExtensionClient client,
+        StickerRenditionService renditionService) {
+        this.client = client;
+        this.renditionService = renditionService;
+        this.cache = new DiskLruCache(CACHE_DIRECTORY, MAX_CACHE_SIZE.toBytes());
+        this.scheduler = Schedulers.newBoundedElastic(2, 16, "sticker-sprite");
+    }
+
+    @Override
+    public Mono<StickerSpriteSheet> getSpriteSheet(String groupName) {
+        var listOptions = ListOptions.builder()
+            .andQuery(equal("spec.groupName", groupName))
+            .build();
+        return client.listAll(Sticker.class, listOptions, Sort.unsorted())
+            .filter(sticker -> sticker.getStatus() != null
+                && StringUtils.isNotBlank(sticker.getStatus().getAttachmentName()))
+            .sort(StickerSorter.sequenceComparator())
+            .take(MAX_TILES)
+            .collectList()
+            .flatMap(stickers -> {
+                var hash = contentHash(stickers);
+                var key = groupName + "-" + hash;
+                return Mono.fromCallable(() -> readSheet(key))
+                    .subscribeOn(scheduler)
+                    .switchIfEmpty(Mono.defer(() -> building.computeIfAbsent(key,
+                        k -> build(groupName, hash, stickers)
+                            .doFinally(signal -> building.remove(k))
+                            .cache())));
+            });
+    }
+
+    @Override
+    public Mono<Path> getSpriteImage(String groupName, String hash) {
+        return Mono.fromCallable(() -> cache.get(imageKey(groupName + "-" + hash)))
+            .flatMap(Mono::justOrEmpty);
+    }
+
+    private Mono<StickerSpriteSheet> build(String groupName, String hash,
+        List<Sticker> stickers) {
+        return Flux.fromIterable(stickers)
+            .flatMapSequential(sticker -> renditionService
+                .getThumbnail(sticker.getMetadata().getName(), TILE_SIZE)
+                .filter(rendition -> rendition.file() != null)
+                .map(rendition -> new TileSource(sticker.getMetadata().getName(),
+                    rendition.file())), TILE_CONCURRENCY)
+            .collectList()
+            .publishOn(scheduler)
+            .map(sources -> {
+                var key = groupName + "-" + hash;
+                try {
+                    var sheet = composite(groupName, hash, sources, key);
+                    cache.put(sheetKey(key), JsonUtils.mapper().writeValueAsBytes(sheet));
+                    return sheet;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to build sprite sheet " + key, e);
+                }
+            });
+    }
+
+    private StickerSpriteSheet composite(String groupName, String hash, List<TileSource> sources,
+        String key) throws IOException {
+        var tiles = new ArrayList<LoadedTile>(sources.size());
+        for (var source : sources) {
+            var image = readImage(source.file());
+            if (image != null) {
+                tiles.add(new LoadedTile(source.stickerName(), image));
+            }
+        }
+        if (tiles.isEmpty()) {
+            return new StickerSpriteSheet(hash, null, 0, 0, new LinkedHashMap<>());
+        }
+        var columns = Math.min(COLUMNS, tiles.size());
+        var rows = (tiles.size() + columns - 1) / columns;
+        var sheet =
+            new BufferedImage(columns * TILE_SIZE, rows * TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        var placements = new LinkedHashMap<String, StickerSpriteSheet.Tile>();
+        var graphics = sheet.createGraphics();
+        try {
+            for (int i = 0; i < tiles.size(); i++) {
+                var tile = tiles.get(i);
+                var width = Math.min(TILE_SIZE, tile.image().getWidth());
+                var height = Math.min(TILE_SIZE, tile.image().getHeight());
+                // center the tile in its cell
+                var x = (i % columns) * TILE_SIZE + (TILE_SIZE - width) / 2;
+                var y = (i / columns) * TILE_SIZE + (TILE_SIZE - height) / 2;
+                graphics.drawImage(tile.image(), x, y, width, height, null);
+                placements.put(tile.stickerName(), new StickerSpriteSheet.Tile(x, y, width,
+                    height));
+            }
+        } finally {
+            graphics.dispose();
+        }
+        var output = new ByteArrayOutputStream();
+        ImageIO.write(sheet, "png", output);
+        cache.put(imageKey(key), output.toByteArray());
+        return new StickerSpriteSheet(hash, String.format(IMAGE_URL_TEMPLATE, groupName, hash),
+            sheet.getWidth(), sheet.getHeight(), placements);
+    }
+
+    private StickerSpriteSheet readSheet(String key) throws IOException {
+        var sheetFile = cache.get(sheetKey(key));
+        if (sheetFile.isEmpty()) {
+            return null;
+        }
+        var sheet = JsonUtils.mapper()
+            .readValue(Files.readAllBytes(sheetFile.get()), StickerSpriteSheet.class);
+        if (sheet.imageUrl() != null && cache.get(imageKey(key)).isEmpty()) {
+            // the image was evicted on its own, build both again
+            cache.remove(sheetKey(key));
+            return null;
+        }
+        return sheet;
+    }
+
+    private static BufferedImage readImage(Path file) {
+        try {
+            return ImageIO.read(file.toFile());
+        } catch (IOException e) {
+            log.warn("Failed to read sticker thumbnail {}, skip it in the sprite sheet", file, e);
+            return null;
+        }
+    }
+
+    private static String contentHash(List<Sticker> stickers) {
+        var hasher = Hashing.sha256().newHasher()
+            .putInt(TILE_SIZE)
+            .putInt(COLUMNS);
+        for (var sticker : stickers) {
+            hasher.putString(sticker.getMetadata().getName(), StandardCharsets.UTF_8)
+                .putChar('\n')
+                .putString(sticker.getStatus().getAttachmentName(), StandardCharsets.UTF_8)
+                .putChar('\n')
+                .putLong(sticker.getStatus().getAttachmentVersion() == null
+                    ? 0 : sticker.getStatus().getAttachmentVersion());
+        }
+        return hasher.hash().toString().substring(0, 16);
+    }
+
+    private static String sheetKey(String key) {
+        return key + ".json";
+    }
+
+    private static String imageKey(String key) {
+        return key + ".png";
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+
+    private record TileSource(String stickerName, Path file) {
+    }
+
+    private record LoadedTile(String stickerName, BufferedImage image) {
+    }
+}
@@ -0,0 +1,706 @@
+package run.halo.sticker.service.impl;
+
+import static run.halo.sticker.service.StickerOrderService.SEQUENCE_GAP;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.Files;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.lang.Nullable;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import run.halo.app.core.extension.attachment.Attachment;
+import run.halo.app.core.extension.service.AttachmentService;
+import run.halo.app.extension.ExtensionUtil;
+import run.halo.app.extension.ListOptions;
+import run.halo.app.extension.Metadata;
+import run.halo.app.extension.PageRequestImpl;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.app.extension.index.query.QueryFactory;
+import run.halo.app.infra.utils.JsonUtils;
+import run.halo.app.plugin.ReactiveSettingFetcher;
+import run.halo.sticker.infra.StickerMetrics;
+import run.halo.sticker.infra.StickerSetting;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.model.StickerGroup;
+import run.halo.sticker.pojo.enums.StickerSorter;
+import run.halo.sticker.service.StickerGroupService;
+import run.halo.sticker.service.StickerOrderService;
+import run.halo.sticker.service.StickerUploadService;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StickerUploadServiceImpl implements StickerUploadService {
+
+    private static final String STICKER_GROUP_NAME = "sticker-group";
+    private static final String DEFAULT_STICKER_ATTACHMENT_POLICY_NAME = "default-policy";
+    private static final int DEFAULT_MAX_FILE_SIZE_KB = 2048;
+    private static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 4;
+    private static final int DEFAULT_OPTIMIZE_BUDGET_MILLIS = 2000;
+    /**
+     * Allowance for the multipart boundaries and part headers around the file of an upload
+     * request.
+     */
+    private static final DataSize MULTIPART_OVERHEAD = DataSize.ofKilobytes(16L);
+    private static final DataSize MAX_PACK_SIZE = DataSize.ofMegabytes(200L);
+    private static final DataSize MAX_MANIFEST_SIZE = DataSize.ofMegabytes(1L);
+    private static final Set<String> PACK_ENTRY_EXTENSIONS =
+        Set.of("png", "jpg", "jpeg", "gif", "webp");
+    private static final int DEFAULT_BATCH_CONCURRENCY = 4;
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 128;
+    private static final Duration IDEMPOTENCY_KEY_TTL = Duration.ofMinutes(10);
+
+    private final ReactiveExtensionClient client;
+    private final AttachmentService attachmentService;
+    private final ReactiveSettingFetcher settingFetcher;
+    private final StickerGroupService stickerGroupService;
+    private final StickerMetrics metrics;
+    private final StickerImageOptimizer imageOptimizer;
+
+    private final UserUploadLimiter uploadLimiter = new UserUploadLimiter();
+
+    /**
+     * Names of the stickers created by user and idempotency key. A retried request replays the
+     * sticker instead of storing the file again.
+     */
+    private final Cache<String, String> completedUploads = CacheBuilder.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterWrite(IDEMPOTENCY_KEY_TTL)
+        .build();
+
+    /**
+     * Running uploads by user and idempotency key, which a retried request joins. Entries only
+     * live as long as the upload, so the request bodies they hold are released with it.
+     */
+    private final ConcurrentMap<String, Mono<Sticker>> inflightUploads =
+        new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Sticker> upload(FilePart filePart, String groupName,
+        @Nullable String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return doUpload(filePart, groupName);
+        }
+        if (idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            return Mono.error(new ServerWebInputException("Idempotency key is too long"));
+        }
+        return getUserName().flatMap(userName -> {
+            var cacheKey = userName + "\n" + idempotencyKey;
+            return inflightUploads.computeIfAbsent(cacheKey, key -> {
+                var stickerName = completedUploads.getIfPresent(key);
+                var upload = stickerName == null ? doUpload(filePart, groupName)
+                    : client.fetch(Sticker.class, stickerName)
+                        // the sticker was deleted since, so the key no longer stands for it
+                        .switchIfEmpty(Mono.defer(() -> doUpload(filePart, groupName)));
+                // a failed upload is not remembered and may be retried with the same key
+                return upload
+                    .doOnNext(sticker -> completedUploads.put(key,
+                        sticker.getMetadata().getName()))
+                    .doFinally(signal -> inflightUploads.remove(key))
+                    .cache();
+            });
+        });
+    }
+
+    /**
+     * Resolves the group before anything is stored, so that the sticker is persisted with a
+     * single create and a failure never leaves an uploaded file behind a retry.
+     */
+    private Mono<Sticker> doUpload(FilePart filePart, String groupName) {
+        return Mono.zip(fetchUploadLimits(), getUserName(), getOrCreateStickerGroup(groupName))
+            .flatMap(tuple -> {
+                var limits = tuple.getT1();
+                var stickerGroupName = tuple.getT3().getMetadata().getName();
+                return uploadLimiter.withPermit(tuple.getT2(), limits.maxConcurrentUploads(),
+                    storeContent(limits, filePart)
+                        .flatMap(content -> lastSequence(stickerGroupName)
+                            .flatMap(last -> {
+                                var sticker = newSticker(content, filePart.filename(),
+                                    stickerGroupName);
+                                sticker.getSpec().setSequence(sequenceAfter(last, 1));
+                                return createSticker(content, sticker);
+                            })));
+            });
+    }
+
+    @Override
+    public Mono<Void> checkContentLength(long contentLength) {
+        return fetchUploadLimits()
+            .flatMap(limits -> {
+                if (contentLength > limits.maxFileSize() + MULTIPART_OVERHEAD.toBytes()) {
+                    return Mono.error(UploadAdmission.tooLarge(limits.maxFileSize(), metrics));
+                }
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * Uploads the files concurrently, the stickers are appended to the group in the order the
+     * files were sent, whatever order their uploads complete in.
+     */
+    @Override
+    public Flux<UploadResult> uploadBatch(Flux<FilePart> fileParts, String groupName) {
+        return getOrCreateStickerGroup(groupName)
+            .flatMap(stickerGroup -> Mono.zip(fetchUploadLimits(), getUserName(),
+                Mono.just(stickerGroup), lastSequence(stickerGroup.getMetadata().getName())))
+            .flatMapMany(tuple -> {
+                var limits = tuple.getT1();
+                var userName = tuple.getT2();
+                var stickerGroupName = tuple.getT3().getMetadata().getName();
+                var lastSequence = tuple.getT4();
+                // a batch alone never runs into the per-user limit
+                var concurrency = Math.min(limits.batchConcurrency(),
+                    limits.maxConcurrentUploads());
+                return fileParts.index().flatMapSequential(indexed -> {
+                    var filePart = indexed.getT2();
+                    var fileName = filePart.filename();
+                    var sequence = sequenceAfter(lastSequence, indexed.getT1() + 1);
+                    return uploadLimiter.withPermit(userName, limits.maxConcurrentUploads(),
+                            storeContent(limits, filePart)
+                                .flatMap(content -> {
+                                    var sticker = newSticker(content, fileName,
+                                        stickerGroupName);
+                                    sticker.getSpec().setSequence(sequence);
+                                    return createSticker(content, sticker);
+                                }))
+                        .map(sticker -> UploadResult.success(fileName, sticker))
+                        .onErrorResume(e -> {
+                            log.warn("Failed to upload sticker file: {}", fileName, e);
+                            var error = e instanceof ResponseStatusException statusException
+                                ? statusException.getReason() : e.getMessage();
+                            return Mono.just(UploadResult.failure(fileName, error));
+                        });
+                }, concurrency);
+            });
+    }
+
+    @Override
+    public Mono<StickerGroup> importPack(FilePart pack, @Nullable String displayName) {
+        var groupDisplayName = StringUtils.defaultIfBlank(displayName,
+            Files.getNameWithoutExtension(pack.filename()));
+        var keepDisplayName = StringUtils.isNotBlank(displayName);
+        return Mono.zip(fetchUploadLimits(), getUserName())
+            // entries are stored one by one, so a whole import takes a single permit
+            .flatMap(tuple -> uploadLimiter.withPermit(tuple.getT2(),
+                tuple.getT1().maxConcurrentUploads(),
+                createPackStickerGroup(groupDisplayName, tuple.getT2())
+                    .flatMap(stickerGroup -> importPackEntries(tuple.getT1(), stickerGroup,
+                        pack.content(), keepDisplayName)
+                        .onErrorResume(e -> client.delete(stickerGroup)
+                            .onErrorResume(deleteError -> {
+                                log.warn("Failed to clean up sticker group {} after failed "
+                                    + "import", stickerGroup.getMetadata().getName(),
+                                    deleteError);
+                                return Mono.empty();
+                            })
+                            .then(Mono.error(e)))
+                    )
+            ));
+    }
+
+    /**
+     * Imports the sticker files of a pack in archive order. A {@code manifest.json}, as written
+     * by exports, supplies display names, descriptions and the order of the stickers. Exports
+     * put it first so that it applies while streaming, stickers created before a manifest that
+     * comes later are updated once the archive has been read.
+     */
+    private Mono<StickerGroup> importPackEntries(UploadLimits limits, StickerGroup stickerGroup,
+        Flux<DataBuffer> archive, boolean keepDisplayName) {
+        var groupName = stickerGroup.getMetadata().getName();
+        var packSize = new AtomicLong(0);
+        var packImport = new PackImport();
+        return StickerPackReader.entries(archive)
+            .filter(entry -> StickerPackManifest.isManifestEntry(entry.name())
+                || isPackStickerEntry(entry.name()))
+            // entries share the archive stream, so they must be uploaded one by one
+            .concatMap(entry -> {
+                if (StickerPackManifest.isManifestEntry(entry.name())) {
+                    return readManifest(packSizeCheck(entry.content(), packSize))
+                        .doOnNext(packImport::setManifest)
+                        .then(Mono.<Sticker>empty());
+                }
+                var fileName = StringUtils.substringAfterLast("/" + entry.name(), "/");
+                return storeContent(limits, fileName, -1L,
+                        packSizeCheck(entry.content(), packSize))
+                    .flatMap(content -> {
+                        var sticker = newSticker(content, fileName, groupName);
+                        packImport.apply(sticker, fileName);
+                        return createSticker(content, sticker);
+                    })
+                    .doOnNext(sticker -> packImport.created(sticker, fileName));
+            }, 0)
+            .then(Mono.defer(() -> applyLateManifest(packImport, groupName, keepDisplayName)))
+            .then(Mono.fromSupplier(() -> {
+                log.info("Imported {} stickers into group {}", packImport.imported, groupName);
+                return stickerGroup;
+            }));
+    }
+
+    /**
+     * Reads the manifest of a pack, or nothing if it is not one written by an export, since
+     * packs from elsewhere may carry their own {@code manifest.json}.
+     */
+    private Mono<StickerPackManifest> readManifest(Flux<DataBuffer> content) {
+        return DataBufferUtils.join(content, (int) MAX_MANIFEST_SIZE.toBytes())
+            .<StickerPackManifest>handle((dataBuffer, sink) -> {
+                try (var input = dataBuffer.asInputStream(true)) {
+                    sink.next(JsonUtils.mapper().readValue(input, StickerPackManifest.class));
+                } catch (IOException e) {
+                    log.warn("Ignored unreadable sticker pack manifest: {}", e.getMessage());
+                }
+            })
+            .onErrorResume(DataBufferLimitException.class, e -> {
+                log.warn("Ignored sticker pack manifest larger than {}", MAX_MANIFEST_SIZE);
+                return Mono.empty();
+            });
+    }
+
+    private Mono<Void> applyLateManifest(PackImport packImport, String groupName,
+        boolean keepDisplayName) {
+        var manifest = packImport.manifest;
+        if (manifest == null) {
+            return Mono.empty();
+        }
+        var updateStickers = Flux.fromIterable(packImport.createdBeforeManifest)
+            .concatMap(created -> client.fetch(Sticker.class, created.stickerName())
+                .flatMap(sticker -> {
+                    packImport.apply(sticker, created.fileName());
+                    return client.update(sticker);
+                })
+                .retryWhen(Retry.backoff(3, Duration.ofMillis(50))
+                    .filter(OptimisticLockingFailureException.class::isInstance)));
+        var group = manifest.group();
+        if (group == null) {
+            return updateStickers.then();
+        }
+        var updateGroup = client.fetch(StickerGroup.class, groupName)
+            .flatMap(stickerGroup -> {
+                var spec = stickerGroup.getSpec();
+                if (!keepDisplayName && StringUtils.isNotBlank(group.displayName())) {
+                    spec.setDisplayName(group.displayName());
+                }
+                spec.setDescription(group.description());
+                return client.update(stickerGroup);
+            })
+            .retryWhen(Retry.backoff(3, Duration.ofMillis(50))
+                .filter(OptimisticLockingFailureException.class::isInstance));
+        return updateStickers.then(updateGroup).then();
+    }
+
+    private static boolean isPackStickerEntry(String entryName) {
+        if (entryName.startsWith("__MACOSX/")) {
+            return false;
+        }
+        var fileName = StringUtils.substringAfterLast("/" + entryName, "/");
+        if (fileName.startsWith(".")) {
+            return false;
+        }
+        var ext = Files.getFileExtension(fileName).toLowerCase(Locale.ROOT);
+        return PACK_ENTRY_EXTENSIONS.contains(ext);
+    }
+
+    private Mono<StickerGroup> createPackStickerGroup(String displayName, String userName) {
+        var stickerGroup = new StickerGroup();
+        var metadata = new Metadata();
+        metadata.setName(UUID.randomUUID().toString());
+        stickerGroup.setMetadata(metadata);
+        var stickerGroupSpec = new StickerGroup.StickerGroupSpec();
+        stickerGroupSpec.setDisplayName(displayName);
+        stickerGroupSpec.setIsPublic(false);
+        stickerGroupSpec.setIsDefault(false);
+        stickerGroupSpec.setOwner(userName);
+        stickerGroup.setSpec(stickerGroupSpec);
+        return client.create(stickerGroup);
+    }
+
+    /**
+     * Creates the sticker of stored content. A reused attachment is checked again once the
+     * sticker refers to it: the sticker it was found through may have been deleted meanwhile and
+     * released the attachment before the new sticker existed.
+     */
+    private Mono<Sticker> createSticker(StoredContent content, Sticker sticker) {
+        if (!content.deduplicated()) {
+            return client.create(sticker);
+        }
+        return client.create(sticker)
+            .flatMap(created -> client.fetch(Attachment.class, content.attachmentName())
+                .filter(attachment -> !ExtensionUtil.isDeleted(attachment))
+                .map(attachment -> created)
+                .switchIfEmpty(Mono.defer(() -> client.delete(created)
+                    .then(Mono.error(new ResponseStatusException(HttpStatus.CONFLICT,
+                        "The stored sticker file was removed during the upload, please retry."
+                    ))))));
+    }
+
+    /**
+     * Gets the highest sequence in the group, stickers without one count as 0.
+     */
+    private Mono<Integer> lastSequence(String groupName) {
+        var listOptions = ListOptions.builder()
+            .andQuery(QueryFactory.equal("spec.groupName", groupName))
+            .build();
+        var pageRequest = PageRequestImpl.of(1, 1,
+            Sort.by(Sort.Order.desc(StickerSorter.SEQUENCE.indexField())));
+        return client.listBy(Sticker.class, listOptions, pageRequest)
+            .map(listResult -> listResult.get()
+                .findFirst()
+                .map(sticker -> sticker.getSpec().getSequence())
+                .orElse(0));
+    }
+
+    /**
+     * Gets the sequence of the n-th sticker appended after the given one, spaced by
+     * {@link StickerOrderService#SEQUENCE_GAP} so that stickers can later be moved between them
+     * without renumbering the group.
+     */
+    static int sequenceAfter(@Nullable Integer last, long n) {
+        var sequence = (last == null ? 0L : last) + n * SEQUENCE_GAP;
+        return (int) Math.min(Integer.MAX_VALUE, sequence);
+    }
+
+    private static Sticker newSticker(StoredContent content, String fileName, String groupName) {
+        var sticker = new Sticker();
+        var metadata = new Metadata();
+        metadata.setName(UUID.randomUUID().toString());
+        sticker.setMetadata(metadata);
+        Sticker.StickerSpec stickerSpec = new Sticker.StickerSpec();
+        stickerSpec.setAttachmentName(content.attachmentName());
+        stickerSpec.setContentHash(content.contentHash());
+        stickerSpec.setDisplayName(fileName);
+        stickerSpec.setGroupName(groupName);
+        sticker.setSpec(stickerSpec);
+        return sticker;
+    }
+
+    private Mono<StickerGroup> getOrCreateStickerGroup(String groupName) {
+        return getUserName()
+            .flatMap(userName -> stickerGroupService.resolveGroup(groupName, userName));
+    }
+
+    private Mono<String> getUserName() {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .map(Principal::getName);
+    }
+
+    private Mono<String> fetchPolicyName() {
+        return settingFetcher.fetch(StickerSetting.Attachment.GROUP,
+                StickerSetting.Attachment.class)
+            .switchIfEmpty(
+                Mono.error(new IllegalStateException("Attachment setting is not configured"))
+            )
+            .map(stickerSetting -> {
+                String stickerPolicy = stickerSetting.getAttachmentPolicyName();
+                if (StringUtils.isBlank(stickerPolicy)) {
+                    stickerPolicy = DEFAULT_STICKER_ATTACHMENT_POLICY_NAME;
+                }
+                return stickerPolicy;
+            });
+    }
+
+    private Mono<UploadLimits> fetchUploadLimits() {
+        return Mono.zip(fetchPolicyName(),
+                settingFetcher.fetch(StickerSetting.Upload.GROUP, StickerSetting.Upload.class)
+                    .defaultIfEmpty(new StickerSetting.Upload()))
+            .map(tuple -> {
+                var policyName = tuple.getT1();
+                var setting = tuple.getT2();
+                var maxFileSizeKb = Optional.ofNullable(setting.getPolicySizeLimits())
+                    .stream()
+                    .flatMap(List::stream)
+                    .filter(limit -> policyName.equals(limit.getPolicyName()))
+                    .map(StickerSetting.PolicySizeLimit::getMaxFileSizeKb)
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .orElse(setting.getMaxFileSizeKb());
+                return new UploadLimits(policyName,
+                    DataSize.ofKilobytes(positiveOrDefault(maxFileSizeKb,
+                        DEFAULT_MAX_FILE_SIZE_KB)).toBytes(),
+                    positiveOrDefault(setting.getBatchConcurrency(), DEFAULT_BATCH_CONCURRENCY),
+                    positiveOrDefault(setting.getMaxConcurrentUploadsPerUser(),
+                        DEFAULT_MAX_CONCURRENT_UPLOADS),
+                    Boolean.TRUE.equals(setting.getOptimizeEnabled()),
+                    Duration.ofMillis(positiveOrDefault(setting.getOptimizeBudgetMillis(),
+                        DEFAULT_OPTIMIZE_BUDGET_MILLIS)));
+            });
+    }
+
+    private static int positiveOrDefault(@Nullable Integer value, int defaultValue) {
+        return value == null || value < 1 ? defaultValue : value;
+    }
+
+    private Mono<StoredContent> storeContent(UploadLimits limits, FilePart filePart) {
+        return storeContent(limits, filePart.filename(), filePart.headers().getContentLength(),
+            filePart.content());
+    }
+
+    /**
+     * Stores the content as an attachment unless a sticker with identical content already
+     * exists, in which case its attachment is reused and nothing is written to storage.
+     *
+     * <p>The content is hashed while it passes the admission check, which rejects it by its
+     * declared size, its actual size or its leading bytes before anything is stored. The checked
+     * buffers are kept by reference until the hash is known, which is bounded by the maximum
+     * file size. The attachment gets the media type and extension of the recognized image
+     * type, whatever the client declared. The content hash is always the one of the uploaded
+     * bytes, so the same upload finds its attachment whether it was optimized or not.
+     */
+    private Mono<StoredContent> storeContent(UploadLimits limits, String fileName,
+        long declaredSize, Flux<DataBuffer> content) {
+        var policyName = limits.policyName();
+        return Mono.defer(() -> {
+            var admission = new UploadAdmission(limits.maxFileSize(), metrics);
+            admission.checkDeclaredSize(declaredSize);
+            var digest = newContentDigest();
+            var start = System.nanoTime();
+            return admissionCheck(content, admission)
+                .doOnNext(dataBuffer -> updateContentDigest(digest, dataBuffer))
+                .collectList()
+                .flatMap(dataBuffers -> {
+                    var contentHash = HexFormat.of().formatHex(digest.digest());
+                    return findAttachmentByContentHash(contentHash)
+                        .map(attachmentName -> {
+                            dataBuffers.forEach(DataBufferUtils::release);
+                            log.debug("Reuse attachment {} for sticker file {}", attachmentName,
+                                fileName);
+                            recordUpload(policyName, "deduplicated", admission, start);
+                            return new StoredContent(attachmentName, contentHash, true);
+                        })
+                        .switchIfEmpty(Mono.defer(() -> {
+                            var imageType = admission.imageType();
+                            return optimize(limits, imageType, dataBuffers)
+                                .flatMap(stored -> attachmentService.upload(policyName,
+                                    STICKER_GROUP_NAME,
+                                    UUID.randomUUID() + "." + imageType.extension(),
+                                    stored,
+                                    imageType.mediaType()
+                                ))
+                                .map(attachment -> {
+                                    recordUpload(policyName, "stored", admission, start);
+                                    return new StoredContent(
+                                        attachment.getMetadata().getName(), contentHash, false);
+                                });
+                        }))
+                        // buffers handed to the upload are released by it, also on failure
+                        .doOnError(e -> dataBuffers.forEach(DataBufferUtils::release));
+                })
+                .doOnError(e -> recordUpload(policyName, "failed", admission, start))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        });
+    }
+
+    /**
+     * Optimizes the checked content if enabled.
+     *
+     * @return a mono of the content to store, the optimized image if it is smaller and the
+     * checked buffers otherwise
+     */
+    private Mono<Flux<DataBuffer>> optimize(UploadLimits limits, ImageType imageType,
+        List<DataBuffer> dataBuffers) {
+        if (!limits.optimize()) {
+            return Mono.just(handOver(dataBuffers));
+        }
+        return Mono.fromSupplier(() -> toByteArray(dataBuffers))
+            .flatMap(image -> imageOptimizer.optimize(imageType, image, limits.optimizeBudget()))
+            .map(optimized -> {
+                dataBuffers.forEach(DataBufferUtils::release);
+                // released already, so a later failure must not release them again
+                dataBuffers.clear();
+                return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(optimized));
+            })
+            .defaultIfEmpty(handOver(dataBuffers));
+    }
+
+    /**
+     * Emits the checked buffers for storing. Each buffer leaves the list as it is emitted,
+     * since its subscriber releases it from then on, so the list holds exactly the buffers
+     * that are still to be released by the caller.
+     */
+    private static Flux<DataBuffer> handOver(List<DataBuffer> dataBuffers) {
+        return Flux.generate(sink -> {
+            if (dataBuffers.isEmpty()) {
+                sink.complete();
+            } else {
+                sink.next(dataBuffers.remove(0));
+            }
+        });
+    }
+
+    private static byte[] toByteArray(List<DataBuffer> dataBuffers) {
+        var size = dataBuffers.stream().mapToInt(DataBuffer::readableByteCount).sum();
+        var bytes = new byte[size];
+        var offset = 0;
+        for (var dataBuffer : dataBuffers) {
+            // read-only views, the buffers may still be stored as they are
+            try (var byteBuffers = dataBuffer.readableByteBuffers()) {
+                while (byteBuffers.hasNext()) {
+                    var byteBuffer = byteBuffers.next();
+                    var count = byteBuffer.remaining();
+                    byteBuffer.get(bytes, offset, count);
+                    offset += count;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private void recordUpload(String policyName, String outcome, UploadAdmission admission,
+        long start) {
+        metrics.recordUpload(policyName, outcome, admission.size(),
+            Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private Mono<String> findAttachmentByContentHash(String contentHash) {
+        var listOptions = ListOptions.builder()
+            .andQuery(QueryFactory.equal("spec.contentHash", contentHash))
+            // a sticker being deleted is about to release its attachment
+            .andQuery(QueryFactory.isNull("metadata.deletionTimestamp"))
+            .build();
+        return client.listBy(Sticker.class, listOptions, PageRequestImpl.ofSize(1))
+            .flatMap(listResult -> Mono.justOrEmpty(listResult.get().findFirst()))
+            .filter(sticker -> !ExtensionUtil.isDeleted(sticker))
+            .mapNotNull(sticker -> sticker.getSpec().getAttachmentName())
+            // the attachment may have been removed from the attachment library directly
+            .flatMap(attachmentName -> client.fetch(Attachment.class, attachmentName))
+            .filter(attachment -> !ExtensionUtil.isDeleted(attachment))
+            .map(attachment -> attachment.getMetadata().getName());
+    }
+
+    private static MessageDigest newContentDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static void updateContentDigest(MessageDigest digest, DataBuffer dataBuffer) {
+        // read-only views of the readable bytes, the buffer itself is left untouched
+        try (var byteBuffers = dataBuffer.readableByteBuffers()) {
+            while (byteBuffers.hasNext()) {
+                digest.update(byteBuffers.next());
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static Flux<DataBuffer> admissionCheck(Flux<DataBuffer> content, UploadAdmission admission) {
+        return content.doOnNext(admission::accept)
+            .doOnComplete(admission::complete);
+    }
+
+    private Flux<DataBuffer> packSizeCheck(Flux<DataBuffer> content, AtomicLong packSize) {
+        return content.doOnNext(dataBuffer -> {
+            long len = packSize.addAndGet(dataBuffer.readableByteCount());
+            if (len > MAX_PACK_SIZE.toBytes()) {
+                metrics.uploadRejected("pack");
+                throw new ServerWebInputException("The sticker pack needs to be smaller than "
+                    + MAX_PACK_SIZE.toMegabytes() + " MB after extraction.");
+            }
+        });
+    }
+
+    /**
+     * An attachment holding an uploaded file.
+     *
+     * @param deduplicated whether an existing attachment with the same content was reused
+     */
+    record StoredContent(String attachmentName, String contentHash, boolean deduplicated) {
+    }
+
+    /**
+     * Progress of a pack import. Entries are handled one by one, so no two threads ever touch
+     * it at the same time.
+     */
+    private static final class PackImport {
+        @Nullable
+        private StickerPackManifest manifest;
+        private Map<String, Integer> positions = Map.of();
+        private int listed = 0;
+        private int unlisted = 0;
+        private int imported = 0;
+        private final List<CreatedSticker> createdBeforeManifest = new ArrayList<>();
+
+        void setManifest(StickerPackManifest manifest) {
+            this.manifest = manifest;
+            this.positions = manifest.positions();
+            this.listed = manifest.stickers() == null ? 0 : manifest.stickers().size();
+        }
+
+        /**
+         * Orders stickers listed in the manifest by their position and the others after them
+         * in archive order, and copies the metadata the manifest has for them.
+         */
+        void apply(Sticker sticker, String fileName) {
+            var spec = sticker.getSpec();
+            var position = positions.get(fileName);
+            if (manifest == null || position == null) {
+                spec.setSequence(sequenceAfter(0, 1L + listed + unlisted++));
+                return;
+            }
+            spec.setSequence(sequenceAfter(0, 1L + position));
+            var entry = manifest.stickers().get(position);
+            if (StringUtils.isNotBlank(entry.displayName())) {
+                spec.setDisplayName(entry.displayName());
+            }
+            spec.setDescription(entry.description());
+        }
+
+        void created(Sticker sticker, String fileName) {
+            imported++;
+            if (manifest == null) {
+                createdBeforeManifest.add(
+                    new CreatedSticker(sticker.getMetadata().getName(), fileName));
+            }
+        }
+    }
+
+    private record CreatedSticker(String stickerName, String fileName) {
+    }
+
+    /**
+     * Upload settings resolved for the current attachment policy.
+     *
+     * @param maxFileSize the file size limit of the policy in bytes
+     * @param optimize whether uploaded images are optimized before they are stored
+     */
+    record UploadLimits(String policyName, long maxFileSize, int batchConcurrency,
+                        int maxConcurrentUploads, boolean optimize, Duration optimizeBudget) {
+    }
+}
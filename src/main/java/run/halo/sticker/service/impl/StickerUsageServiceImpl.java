@@ -0,0 +1,408 @@
+package run.halo.sticker.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import run.halo.app.extension.ExtensionUtil;
+import run.halo.app.extension.Metadata;
+import run.halo.app.extension.ReactiveExtensionClient;
+import run.halo.sticker.event.StickerChangedEvent;
+import run.halo.sticker.event.StickerGroupChangedEvent;
+import run.halo.sticker.infra.StickerMetrics;
+import run.halo.sticker.model.Sticker;
+import run.halo.sticker.model.StickerGroup;
+import run.halo.sticker.model.StickerUsage;
+import run.halo.sticker.pojo.vo.StickerUsageSummary;
+import run.halo.sticker.service.StickerUsageService;
+
+/**
+ * Counts sticker usage in memory and writes it behind to one {@link StickerUsage} per user.
+ *
+ * <p>Recording a click only checks that the sticker is visible to the user and bumps a
+ * {@link LongAdder}. The check is served from caches of sticker groups and group visibility that
+ * change events invalidate, so repeated clicks read nothing from the extension store. Pending
+ * counts are drained every flush interval and merged into the persisted usage with one write
+ * per active user. A failed flush puts the counts back so they are retried with the next flush.
+ */
+@Slf4j
+@Component
+public class StickerUsageServiceImpl implements StickerUsageService, InitializingBean,
+    DisposableBean {
+
+    private static final Duration FLUSH_INTERVAL = Duration.ofSeconds(30);
+    private static final Duration SHUTDOWN_FLUSH_TIMEOUT = Duration.ofSeconds(10);
+    private static final String USAGE_NAME_SUFFIX = "-sticker-usage";
+
+    /**
+     * Persisted entries per user, half of them kept by recency and half by count.
+     */
+    private static final int MAX_ENTRIES = 200;
+
+    /**
+     * Distinct stickers pending per user between two flushes, more could not be persisted
+     * anyway.
+     */
+    private static final int MAX_PENDING_STICKERS = MAX_ENTRIES;
+
+    private static final int MAX_CACHED_STICKERS = 10_000;
+    private static final int MAX_CACHED_GROUPS = 1024;
+    private static final Duration VISIBILITY_CACHE_TTL = Duration.ofMinutes(30);
+
+    private final ReactiveExtensionClient client;
+    private final StickerMetrics metrics;
+
+    /**
+     * Username to sticker name to the usage not flushed yet. A flush subtracts what it drained
+     * instead of replacing the counters, so hits landing meanwhile are kept for the next one.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, PendingUsage>> pending =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Sticker name to the name of its group.
+     */
+    private final Cache<String, String> stickerGroups = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_STICKERS)
+        .expireAfterWrite(VISIBILITY_CACHE_TTL)
+        .build();
+
+    /**
+     * Group name to who may use its stickers.
+     */
+    private final Cache<String, GroupAccess> groupAccess = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_GROUPS)
+        .expireAfterWrite(VISIBILITY_CACHE_TTL)
+        .build();
+
+    /**
+     * Bumped on every invalidation so that a lookup racing with a change is not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Username to the persisted usage by sticker name.
+     */
+    private final Cache<String, Map<String, StickerUsage.UsageEntry>> persisted =
+        CacheBuilder.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(Duration.ofHours(1))
+            .build();
+
+    private Disposable flushing;
+
+    public StickerUsageServiceImpl(ReactiveExtensionClient client, StickerMetrics metrics) {
+        this.client = client;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        flushing = Flux.interval(FLUSH_INTERVAL)
+            .onBackpressureDrop()
+            .concatMap(tick -> flush(), 0)
+            .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        if (flushing != null) {
+            flushing.dispose();
+        }
+        try {
+            flush().block(SHUTDOWN_FLUSH_TIMEOUT);
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush sticker usage on shutdown", e);
+        }
+    }
+
+    @Override
+    public Mono<Void> record(String username, String stickerName) {
+        return resolveGroupName(stickerName)
+            .flatMap(this::resolveGroupAccess)
+            .filter(access -> access.isPublic() || username.equals(access.owner()))
+            .switchIfEmpty(Mono.error(() -> new ServerWebInputException(
+                "Sticker " + stickerName + " does not exist")))
+            .doOnNext(access -> hit(username, stickerName, System.currentTimeMillis()))
+            .then();
+    }
+
+    private Mono<String> resolveGroupName(String stickerName) {
+        var cached = stickerGroups.getIfPresent(stickerName);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        var currentGeneration = generation.get();
+        return client.fetch(Sticker.class, stickerName)
+            .filter(sticker -> !ExtensionUtil.isDeleted(sticker))
+            .mapNotNull(sticker -> sticker.getSpec().getGroupName())
+            .doOnNext(groupName -> {
+                if (generation.get() == currentGeneration) {
+                    stickerGroups.put(stickerName, groupName);
+                }
+            });
+    }
+
+    private Mono<GroupAccess> resolveGroupAccess(String groupName) {
+        var cached = groupAccess.getIfPresent(groupName);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        var currentGeneration = generation.get();
+        return client.fetch(StickerGroup.class, groupName)
+            .filter(group -> !ExtensionUtil.isDeleted(group) && group.getSpec() != null)
+            .map(group -> new GroupAccess(group.getSpec().getOwner(),
+                Boolean.TRUE.equals(group.getSpec().getIsPublic())))
+            .doOnNext(access -> {
+                if (generation.get() == currentGeneration) {
+                    groupAccess.put(groupName, access);
+                }
+            });
+    }
+
+    @EventListener(StickerChangedEvent.class)
+    public void onStickerChanged(StickerChangedEvent event) {
+        generation.incrementAndGet();
+        Stream.of(event.getOldSticker(), event.getSticker())
+            .filter(Objects::nonNull)
+            .forEach(sticker -> stickerGroups.invalidate(sticker.getMetadata().getName()));
+    }
+
+    @EventListener(StickerGroupChangedEvent.class)
+    public void onStickerGroupChanged(StickerGroupChangedEvent event) {
+        generation.incrementAndGet();
+        Stream.of(event.getOldGroup(), event.getGroup())
+            .filter(Objects::nonNull)
+            .forEach(group -> groupAccess.invalidate(group.getMetadata().getName()));
+    }
+
+    private void hit(String username, String stickerName, long now) {
+        var userPending = pending.computeIfAbsent(username, key -> new ConcurrentHashMap<>());
+        var usage = userPending.get(stickerName);
+        if (usage == null) {
+            if (userPending.size() >= MAX_PENDING_STICKERS) {
+                return;
+            }
+            usage = userPending.computeIfAbsent(stickerName, key -> new PendingUsage());
+        }
+        usage.hit(now);
+    }
+
+    @Override
+    public Mono<StickerUsageSummary> getSummary(String username, int limit) {
+        return loadPersisted(username).map(entries -> {
+            var merged = new HashMap<String, StickerUsageSummary.Entry>();
+            entries.values().forEach(entry -> merged.put(entry.getStickerName(),
+                new StickerUsageSummary.Entry(entry.getStickerName(), entry.getCount(),
+                    entry.getLastUsedAt())));
+            var userPending = pending.get(username);
+            if (userPending != null) {
+                userPending.forEach((stickerName, usage) -> {
+                    var count = usage.count.sum();
+                    if (count == 0) {
+                        return;
+                    }
+                    var lastUsedAt = Instant.ofEpochMilli(usage.lastUsedAt);
+                    merged.merge(stickerName,
+                        new StickerUsageSummary.Entry(stickerName, count, lastUsedAt),
+                        (a, b) -> new StickerUsageSummary.Entry(stickerName,
+                            a.count() + b.count(), max(a.lastUsedAt(), b.lastUsedAt())));
+                });
+            }
+            return new StickerUsageSummary(
+                top(merged.values(), Comparator.comparing(StickerUsageSummary.Entry::lastUsedAt,
+                    Comparator.nullsFirst(Comparator.naturalOrder())), limit),
+                top(merged.values(), Comparator.comparingLong(StickerUsageSummary.Entry::count),
+                    limit));
+        });
+    }
+
+    private Mono<Map<String, StickerUsage.UsageEntry>> loadPersisted(String username) {
+        var cached = persisted.getIfPresent(username);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return client.fetch(StickerUsage.class, usageName(username))
+            .map(StickerUsageServiceImpl::toEntryMap)
+            .defaultIfEmpty(Map.of())
+            .doOnNext(entries -> persisted.put(username, entries));
+    }
+
+    private Mono<Void> flush() {
+        return Flux.fromIterable(List.copyOf(pending.keySet()))
+            .concatMap(this::flush)
+            .then();
+    }
+
+    private Mono<StickerUsage> flush(String username) {
+        var userPending = pending.get(username);
+        if (userPending == null) {
+            return Mono.empty();
+        }
+        var drained = new HashMap<String, Drained>();
+        userPending.forEach((stickerName, usage) -> {
+            var count = usage.drain();
+            if (count > 0) {
+                drained.put(stickerName, new Drained(count, usage.lastUsedAt));
+            } else {
+                // idle since the last flush, a hit racing with the removal may be dropped
+                userPending.remove(stickerName, usage);
+            }
+        });
+        if (drained.isEmpty()) {
+            pending.computeIfPresent(username, (key, usages) -> usages.isEmpty() ? null : usages);
+            return Mono.empty();
+        }
+        return Mono.defer(() -> client.fetch(StickerUsage.class, usageName(username))
+                .flatMap(usage -> client.update(merge(usage, drained)))
+                .switchIfEmpty(Mono.defer(() -> client.create(merge(newUsage(username),
+                    drained)))))
+            // a conflict with another node is resolved by merging again, other failures put
+            // the counts back right away
+            .retryWhen(Retry.backoff(3, Duration.ofMillis(100))
+                .filter(OptimisticLockingFailureException.class::isInstance)
+                .doBeforeRetry(signal -> metrics.optimisticLockRetry("usage-flush")))
+            .doOnNext(saved -> persisted.put(username, toEntryMap(saved)))
+            .onErrorResume(e -> {
+                log.warn("Failed to flush sticker usage of user {}, retry with next flush",
+                    username, e);
+                var userUsages = pending.computeIfAbsent(username,
+                    key -> new ConcurrentHashMap<>());
+                drained.forEach((stickerName, usage) -> userUsages
+                    .computeIfAbsent(stickerName, name -> new PendingUsage())
+                    .restore(usage.count(), usage.lastUsedAt()));
+                return Mono.empty();
+            });
+    }
+
+    private static StickerUsage merge(StickerUsage usage, Map<String, Drained> drained) {
+        var entries = new HashMap<String, StickerUsage.UsageEntry>();
+        if (usage.getSpec().getEntries() != null) {
+            usage.getSpec().getEntries()
+                .forEach(entry -> entries.put(entry.getStickerName(), entry));
+        }
+        drained.forEach((stickerName, delta) -> {
+            var entry = entries.computeIfAbsent(stickerName, key -> {
+                var created = new StickerUsage.UsageEntry();
+                created.setStickerName(key);
+                return created;
+            });
+            entry.setCount(entry.getCount() + delta.count());
+            entry.setLastUsedAt(max(entry.getLastUsedAt(),
+                Instant.ofEpochMilli(delta.lastUsedAt())));
+        });
+        usage.getSpec().setEntries(trim(entries.values()));
+        return usage;
+    }
+
+    /**
+     * Keeps the most recent and the most frequent entries, so neither list of the summary
+     * loses stickers to the other.
+     */
+    private static List<StickerUsage.UsageEntry> trim(
+        Collection<StickerUsage.UsageEntry> entries) {
+        if (entries.size() <= MAX_ENTRIES) {
+            return new ArrayList<>(entries);
+        }
+        var kept = new HashSet<StickerUsage.UsageEntry>();
+        kept.addAll(top(entries, Comparator.comparing(StickerUsage.UsageEntry::getLastUsedAt,
+            Comparator.nullsFirst(Comparator.naturalOrder())), MAX_ENTRIES / 2));
+        kept.addAll(top(entries, Comparator.comparingLong(StickerUsage.UsageEntry::getCount),
+            MAX_ENTRIES / 2));
+        return new ArrayList<>(kept);
+    }
+
+    private static <T> List<T> top(Collection<T> items, Comparator<T> comparator,
+        int limit) {
+        return items.stream()
+            .sorted(comparator.reversed())
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    private static Map<String, StickerUsage.UsageEntry> toEntryMap(StickerUsage usage) {
+        var entries = usage.getSpec().getEntries();
+        if (entries == null) {
+            return Map.of();
+        }
+        return entries.stream().collect(Collectors.toUnmodifiableMap(
+            StickerUsage.UsageEntry::getStickerName, entry -> entry, (a, b) -> a));
+    }
+
+    private static StickerUsage newUsage(String username) {
+        var usage = new StickerUsage();
+        usage.setMetadata(new Metadata());
+        usage.getMetadata().setName(usageName(username));
+        usage.getSpec().setUsername(username);
+        return usage;
+    }
+
+    private static String usageName(String username) {
+        return username + USAGE_NAME_SUFFIX;
+    }
+
+    private static Instant max(Instant a, Instant b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null || a.isAfter(b) ? a : b;
+    }
+
+    private static final class PendingUsage {
+        private final LongAdder count = new LongAdder();
+        private volatile long lastUsedAt;
+
+        void hit(long now) {
+            count.increment();
+            lastUsedAt = now;
+        }
+
+        /**
+         * Takes the current count, hits added concurrently stay for the next drain.
+         */
+        long drain() {
+            var drained = count.sum();
+            count.add(-drained);
+            return drained;
+        }
+
+        void restore(long count, long lastUsedAt) {
+            this.count.add(count);
+            if (lastUsedAt > this.lastUsedAt) {
+                this.lastUsedAt = lastUsedAt;
+            }
+        }
+    }
+
+    private record Drained(long count, long lastUsedAt) {
+    }
+
+    private record GroupAccess(@Nullable String owner, boolean isPublic) {
+    }
+}
@@ -0,0 +1,93 @@
+package run.halo.sticker.service.impl;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.UnsupportedMediaTypeStatusException;
+import run.halo.sticker.infra.StickerMetrics;
+
+/**
+ * Admits the buffers of one uploaded file as they arrive, before any of them reaches storage.
+ *
+ * <p>The file is rejected as soon as it exceeds the size limit, and its type is recognized from
+ * the leading bytes of the first buffers, so a file that is not an accepted image is rejected
+ * after a few bytes instead of after the whole upload. Buffers are only inspected, never
+ * consumed. An instance serves a single subscription, whose signals are serialized, so it keeps
+ * its state in plain fields.
+ */
+final class UploadAdmission {
+
+    private final long maxFileSize;
+    private final StickerMetrics metrics;
+
+    private final byte[] header = new byte[ImageType.SIGNATURE_LENGTH];
+    private int headerLength;
+    private long size;
+    private ImageType imageType;
+
+    UploadAdmission(long maxFileSize, StickerMetrics metrics) {
+        this.maxFileSize = maxFileSize;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Rejects a file whose size is declared before its content arrives.
+     *
+     * @param declaredSize the declared size, negative if unknown
+     */
+    void checkDeclaredSize(long declaredSize) {
+        if (declaredSize > maxFileSize) {
+            throw tooLarge(maxFileSize, metrics);
+        }
+    }
+
+    void accept(DataBuffer dataBuffer) {
+        size += dataBuffer.readableByteCount();
+        if (size > maxFileSize) {
+            throw tooLarge(maxFileSize, metrics);
+        }
+        if (imageType == null) {
+            var readPosition = dataBuffer.readPosition();
+            var count = Math.min(header.length - headerLength, dataBuffer.readableByteCount());
+            for (int i = 0; i < count; i++) {
+                header[headerLength++] = dataBuffer.getByte(readPosition + i);
+            }
+            if (headerLength == header.length) {
+                sniff();
+            }
+        }
+    }
+
+    void complete() {
+        if (imageType == null) {
+            sniff();
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Gets the recognized image type, available once the content completed.
+     */
+    @Nullable
+    ImageType imageType() {
+        return imageType;
+    }
+
+    private void sniff() {
+        imageType = ImageType.sniff(header, headerLength).orElseThrow(() -> {
+            metrics.uploadRejected("type");
+            return new UnsupportedMediaTypeStatusException(
+                "The sticker file must be a PNG, JPEG, GIF or WebP image.");
+        });
+    }
+
+    static ResponseStatusException tooLarge(long maxFileSize, StickerMetrics metrics) {
+        metrics.uploadRejected("file");
+        return new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+            "The sticker file needs to be smaller than " + maxFileSize / 1024 + " KB.");
+    }
+}
@@ -0,0 +1,56 @@
+package run.halo.sticker.service.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Limits the number of sticker files a user stores at the same time, so one client cannot
+ * take all the upload bandwidth to the storage policy. Uploads over the limit are rejected
+ * rather than queued, leaving the retry to the client.
+ */
+final class UserUploadLimiter {
+
+    /**
+     * Uploads in flight by username, without entries for users with none.
+     */
+    private final ConcurrentMap<String, Integer> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the upload with one of the user's permits.
+     *
+     * @param username the uploading user
+     * @param limit the maximum number of uploads of the user in flight
+     * @param upload the upload, subscribed only if a permit is available
+     * @return the upload, or a {@code 429 Too Many Requests} error if no permit is available
+     */
+    <T> Mono<T> withPermit(String username, int limit, Mono<T> upload) {
+        return Mono.defer(() -> {
+            if (!tryAcquire(username, limit)) {
+                return Mono.error(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many sticker uploads in progress, please retry later."));
+            }
+            return upload.doFinally(signal -> release(username));
+        });
+    }
+
+    private boolean tryAcquire(String username, int limit) {
+        var acquired = new AtomicBoolean();
+        inFlight.compute(username, (key, count) -> {
+            var current = count == null ? 0 : count;
+            if (current >= limit) {
+                return count;
+            }
+            acquired.set(true);
+            return current + 1;
+        });
+        return acquired.get();
+    }
+
+    private void release(String username) {
+        inFlight.computeIfPresent(username, (key, count) -> count <= 1 ? null : count - 1);
+    }
+}
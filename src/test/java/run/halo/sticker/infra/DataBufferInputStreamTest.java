@@ -0,0 +1,85 @@
+package run.halo.sticker.infra;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+class DataBufferInputStreamTest {
+
+    private final NettyDataBufferFactory bufferFactory =
+        new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+
+    @Test
+    void readsBuffersInOrder() throws IOException {
+        var source = Flux.just(buffer("ab"), buffer(""), buffer("cde"));
+
+        try (var input = new DataBufferInputStream(source, 1)) {
+            assertThat(input.read()).isEqualTo('a');
+            assertThat(new String(input.readAllBytes(), StandardCharsets.US_ASCII))
+                .isEqualTo("bcde");
+            assertThat(input.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void releasesBuffersOnceRead() throws IOException {
+        var buffers = List.of(buffer("ab"), buffer("cd"));
+
+        try (var input = new DataBufferInputStream(Flux.fromIterable(buffers), 2)) {
+            input.readAllBytes();
+            assertThat(buffers).allMatch(buffer -> refCount(buffer) == 0);
+        }
+    }
+
+    @Test
+    void closeCancelsSourceAndReleasesQueuedBuffers() throws IOException {
+        var buffers = List.of(buffer("ab"), buffer("cd"), buffer("ef"));
+        var cancelled = new AtomicBoolean();
+        var source = Flux.fromIterable(buffers)
+            .concatWith(Flux.never())
+            .doOnCancel(() -> cancelled.set(true));
+
+        var input = new DataBufferInputStream(source, 2);
+        assertThat(input.read()).isEqualTo('a');
+        input.close();
+
+        assertThat(cancelled).isTrue();
+        assertThat(refCount(buffers.get(0))).isZero();
+        assertThat(refCount(buffers.get(1))).isZero();
+        // never requested, so still owned by the source
+        assertThat(refCount(buffers.get(2))).isOne();
+        assertThatThrownBy(input::read).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void propagatesSourceError() throws IOException {
+        var source = Flux.just(buffer("ab"))
+            .concatWith(Flux.error(new IllegalStateException("broken")));
+
+        try (var input = new DataBufferInputStream(source, 1)) {
+            assertThat(input.read()).isEqualTo('a');
+            assertThat(input.read()).isEqualTo('b');
+            assertThatThrownBy(input::read)
+                .isInstanceOf(IOException.class)
+                .hasRootCauseMessage("broken");
+        }
+    }
+
+    private DataBuffer buffer(String content) {
+        return bufferFactory.wrap(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static int refCount(DataBuffer buffer) {
+        return ((NettyDataBuffer) buffer).getNativeBuffer().refCnt();
+    }
+}
@@ -0,0 +1,85 @@
+package run.halo.sticker.infra;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiskLruCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void evictsLeastRecentlyUsedEntry() throws IOException {
+        var cache = new DiskLruCache(directory, 10);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        assertThat(cache.get("a")).isPresent();
+
+        cache.put("c", new byte[4]);
+
+        assertThat(cache.get("b")).isEmpty();
+        assertThat(directory.resolve("b")).doesNotExist();
+        assertThat(cache.get("a")).isPresent();
+        assertThat(cache.get("c")).isPresent();
+    }
+
+    @Test
+    void replacedEntryCountsWithItsNewSize() throws IOException {
+        var cache = new DiskLruCache(directory, 10);
+        cache.put("a", new byte[8]);
+        cache.put("a", new byte[2]);
+
+        cache.put("b", new byte[8]);
+
+        assertThat(cache.get("a")).isPresent();
+        assertThat(cache.get("b")).isPresent();
+        assertThat(Files.size(directory.resolve("a"))).isEqualTo(2);
+    }
+
+    @Test
+    void picksUpExistingEntriesOldestFirst() throws IOException {
+        writeFile("old", 6, Instant.parse("2024-01-01T00:00:00Z"));
+        writeFile("new", 6, Instant.parse("2024-06-01T00:00:00Z"));
+
+        var cache = new DiskLruCache(directory, 10);
+
+        assertThat(cache.get("old")).isEmpty();
+        assertThat(directory.resolve("old")).doesNotExist();
+        assertThat(cache.get("new")).contains(directory.resolve("new"));
+    }
+
+    @Test
+    void deletesLeftoverTemporaryFiles() throws IOException {
+        writeFile("interrupted.tmp", 4, Instant.now());
+
+        var cache = new DiskLruCache(directory, 10);
+
+        assertThat(cache.get("interrupted.tmp")).isEmpty();
+        assertThat(directory.resolve("interrupted.tmp")).doesNotExist();
+    }
+
+    @Test
+    void forgetsEntryWhoseFileWasRemoved() throws IOException {
+        var cache = new DiskLruCache(directory, 10);
+        cache.put("a", new byte[8]);
+        Files.delete(directory.resolve("a"));
+
+        assertThat(cache.get("a")).isEmpty();
+        // the removed entry no longer counts towards the size
+        cache.put("b", new byte[8]);
+        assertThat(cache.get("b")).isPresent();
+        assertThat(cache.get("a")).isEmpty();
+    }
+
+    private void writeFile(String name, int size, Instant lastModified) throws IOException {
+        var file = Files.write(directory.resolve(name), new byte[size]);
+        Files.setLastModifiedTime(file, FileTime.from(lastModified));
+    }
+}
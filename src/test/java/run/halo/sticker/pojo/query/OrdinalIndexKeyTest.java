@@ -0,0 +1,27 @@
+package run.halo.sticker.pojo.query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class OrdinalIndexKeyTest {
+
+    @Test
+    void padsToWidthOfLargestInt() {
+        assertThat(OrdinalIndexKey.of(5)).isEqualTo("0000000005");
+        assertThat(OrdinalIndexKey.of(Integer.MAX_VALUE)).isEqualTo("2147483647");
+    }
+
+    @Test
+    void sortsNumericallyAsString() {
+        assertThat(OrdinalIndexKey.of(9)).isLessThan(OrdinalIndexKey.of(10));
+        assertThat(OrdinalIndexKey.of(1024)).isLessThan(OrdinalIndexKey.of(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void indexesMissingAndNegativeAsZero() {
+        assertThat(OrdinalIndexKey.of(null)).isEqualTo("0000000000");
+        assertThat(OrdinalIndexKey.of(-1)).isEqualTo("0000000000");
+        assertThat(OrdinalIndexKey.of(Integer.MIN_VALUE)).isEqualTo("0000000000");
+    }
+}
@@ -0,0 +1,50 @@
+package run.halo.sticker.pojo.query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ServerWebInputException;
+import run.halo.app.extension.Metadata;
+import run.halo.sticker.model.Sticker;
+
+class StickerCursorTest {
+
+    @Test
+    void roundTripsThroughToken() {
+        var cursor = new StickerCursor(2048, "sticker:with-colon");
+
+        assertThat(StickerCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void countsMissingSequenceAsZero() {
+        var sticker = new Sticker();
+        sticker.setMetadata(new Metadata());
+        sticker.getMetadata().setName("a");
+
+        assertThat(StickerCursor.after(sticker)).isEqualTo(new StickerCursor(0, "a"));
+    }
+
+    @Test
+    void rejectsNegativeSequence() {
+        assertThatThrownBy(() -> StickerCursor.decode(token("-1:a")))
+            .isInstanceOf(ServerWebInputException.class);
+    }
+
+    @Test
+    void rejectsMalformedToken() {
+        assertThatThrownBy(() -> StickerCursor.decode("not base64!"))
+            .isInstanceOf(ServerWebInputException.class);
+        assertThatThrownBy(() -> StickerCursor.decode(token("1024")))
+            .isInstanceOf(ServerWebInputException.class);
+        assertThatThrownBy(() -> StickerCursor.decode(token("x:a")))
+            .isInstanceOf(ServerWebInputException.class);
+    }
+
+    private static String token(String decoded) {
+        return Base64.getUrlEncoder().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
+    }
+}
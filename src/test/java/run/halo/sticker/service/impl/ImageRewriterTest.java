@@ -0,0 +1,278 @@
+package run.halo.sticker.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+
+class ImageRewriterTest {
+
+    /**
+     * Offset right after the signature and the header chunk of a PNG.
+     */
+    private static final int PNG_AFTER_IHDR = 8 + 12 + 13;
+
+    @Test
+    void dropsPngMetadataAndKeepsPixels() throws Exception {
+        var png = insert(png(), PNG_AFTER_IHDR, pngChunk("tEXt", "Comment\0hello"),
+            pngChunk("tIME", "\0\0\0\0\0\0\0"));
+
+        var rewritten = ImageRewriter.rewritePng(png, deadline());
+
+        assertThat(pngChunkTypes(rewritten)).containsExactly("IHDR", "IDAT", "IEND");
+        assertSamePixels(rewritten, png());
+    }
+
+    @Test
+    void keepsPngColorProfile() throws Exception {
+        var png = insert(png(), PNG_AFTER_IHDR, pngChunk("iCCP", "profile\0\0data"));
+
+        var rewritten = ImageRewriter.rewritePng(png, deadline());
+
+        assertThat(pngChunkTypes(rewritten)).containsExactly("IHDR", "iCCP", "IDAT", "IEND");
+    }
+
+    @Test
+    void rejectsTruncatedPng() throws IOException {
+        var png = png();
+
+        assertThatThrownBy(() -> ImageRewriter.rewritePng(
+            Arrays.copyOf(png, png.length - 6), deadline()))
+            .isInstanceOf(IllegalArgumentException.class);
+        // cut right after a complete chunk, so only the end chunk is missing
+        assertThatThrownBy(() -> ImageRewriter.rewritePng(
+            Arrays.copyOf(png, png.length - 12), deadline()))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsOversizedPngChunkLength() throws IOException {
+        for (var length : new int[] {0x7FFFFFF0, 0xFFFFFFFF}) {
+            var png = png();
+            writeIntBigEndian(png, 8, length);
+
+            assertThatThrownBy(() -> ImageRewriter.rewritePng(png, deadline()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("length");
+        }
+    }
+
+    @Test
+    void leavesJpegWithoutMetadataUnchanged() throws IOException {
+        var jpeg = jpeg();
+
+        assertThat(ImageRewriter.rewriteJpeg(jpeg)).isEqualTo(jpeg);
+    }
+
+    @Test
+    void dropsJpegCommentAndKeepsColorProfile() throws IOException {
+        var jpeg = jpeg();
+        var afterApp0 = 4 + readShortBigEndian(jpeg, 4);
+        var iccProfile = jpegSegment(0xE2, "ICC_PROFILE\0\1\1profile");
+        var withMetadata = insert(jpeg, afterApp0, jpegSegment(0xFE, "a comment"), iccProfile,
+            jpegSegment(0xE2, "MPF\0data"));
+
+        assertThat(ImageRewriter.rewriteJpeg(withMetadata))
+            .isEqualTo(insert(jpeg, afterApp0, iccProfile));
+    }
+
+    @Test
+    void rejectsTruncatedJpeg() throws IOException {
+        var jpeg = jpeg();
+
+        assertThatThrownBy(() -> ImageRewriter.rewriteJpeg(Arrays.copyOf(jpeg, 1)))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ImageRewriter.rewriteJpeg(Arrays.copyOf(jpeg, 30)))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void dropsWebpMetadataAndKeepsColorProfile() {
+        var iccp = riffChunk("ICCP", "profile");
+        var image = riffChunk("VP8L", "image data");
+        var webp = webp(vp8x(0x20 | 0x08 | 0x04), iccp, riffChunk("EXIF", "exif"), image,
+            riffChunk("XMP ", "<x/>"));
+
+        var rewritten = ImageRewriter.rewriteWebp(webp);
+
+        assertThat(rewritten).isEqualTo(webp(vp8x(0x20), iccp, image));
+    }
+
+    @Test
+    void leavesSimpleWebpUnchanged() {
+        var webp = webp(riffChunk("VP8L", "image data"));
+
+        assertThat(ImageRewriter.rewriteWebp(webp)).isEqualTo(webp);
+    }
+
+    @Test
+    void rejectsOversizedWebpChunk() {
+        var webp = webp(vp8x(0), riffChunk("VP8L", "image data"));
+        // size of the image chunk
+        webp[12 + 18 + 7] = (byte) 0x7F;
+
+        assertThatThrownBy(() -> ImageRewriter.rewriteWebp(webp))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsTruncatedGif() throws Exception {
+        var gif = gif();
+
+        assertThat(ImageRewriter.rewriteGif(gif, deadline())).isEqualTo(gif);
+        assertThatThrownBy(() -> ImageRewriter.rewriteGif(
+            Arrays.copyOf(gif, gif.length - 1), deadline()))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    static byte[] png() throws IOException {
+        return encode("png");
+    }
+
+    private static byte[] jpeg() throws IOException {
+        var image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(3, 3, 0xFF8800);
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    static byte[] gif() throws IOException {
+        return encode("gif");
+    }
+
+    private static byte[] encode(String format) throws IOException {
+        var image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < 8; i++) {
+            image.setRGB(i, i, 0xFF000000 | i * 0x1F0F07);
+        }
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    private static void assertSamePixels(byte[] actual, byte[] expected) throws IOException {
+        var actualImage = ImageIO.read(new ByteArrayInputStream(actual));
+        var expectedImage = ImageIO.read(new ByteArrayInputStream(expected));
+        assertThat(actualImage.getWidth()).isEqualTo(expectedImage.getWidth());
+        assertThat(actualImage.getHeight()).isEqualTo(expectedImage.getHeight());
+        for (int y = 0; y < expectedImage.getHeight(); y++) {
+            for (int x = 0; x < expectedImage.getWidth(); x++) {
+                assertThat(actualImage.getRGB(x, y)).isEqualTo(expectedImage.getRGB(x, y));
+            }
+        }
+    }
+
+    private static List<String> pngChunkTypes(byte[] png) {
+        var types = new ArrayList<String>();
+        int pos = 8;
+        while (pos < png.length) {
+            types.add(new String(png, pos + 4, 4, StandardCharsets.ISO_8859_1));
+            pos += 12 + readIntBigEndian(png, pos);
+        }
+        return types;
+    }
+
+    private static byte[] pngChunk(String type, String data) {
+        var typeBytes = type.getBytes(StandardCharsets.ISO_8859_1);
+        var dataBytes = data.getBytes(StandardCharsets.ISO_8859_1);
+        var chunk = new byte[12 + dataBytes.length];
+        writeIntBigEndian(chunk, 0, dataBytes.length);
+        System.arraycopy(typeBytes, 0, chunk, 4, 4);
+        System.arraycopy(dataBytes, 0, chunk, 8, dataBytes.length);
+        var crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(dataBytes);
+        writeIntBigEndian(chunk, 8 + dataBytes.length, (int) crc.getValue());
+        return chunk;
+    }
+
+    private static byte[] jpegSegment(int marker, String data) {
+        var dataBytes = data.getBytes(StandardCharsets.ISO_8859_1);
+        var segment = new byte[4 + dataBytes.length];
+        segment[0] = (byte) 0xFF;
+        segment[1] = (byte) marker;
+        segment[2] = (byte) ((dataBytes.length + 2) >>> 8);
+        segment[3] = (byte) (dataBytes.length + 2);
+        System.arraycopy(dataBytes, 0, segment, 4, dataBytes.length);
+        return segment;
+    }
+
+    private static byte[] vp8x(int flags) {
+        var data = new byte[10];
+        data[0] = (byte) flags;
+        return riffChunk("VP8X", data);
+    }
+
+    private static byte[] riffChunk(String fourCc, String data) {
+        return riffChunk(fourCc, data.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] riffChunk(String fourCc, byte[] data) {
+        var padded = data.length + (data.length & 1);
+        var chunk = new byte[8 + padded];
+        System.arraycopy(fourCc.getBytes(StandardCharsets.ISO_8859_1), 0, chunk, 0, 4);
+        writeIntLittleEndian(chunk, 4, data.length);
+        System.arraycopy(data, 0, chunk, 8, data.length);
+        return chunk;
+    }
+
+    private static byte[] webp(byte[]... chunks) {
+        var out = new ByteArrayOutputStream();
+        out.writeBytes("RIFF\0\0\0\0WEBP".getBytes(StandardCharsets.ISO_8859_1));
+        for (var chunk : chunks) {
+            out.writeBytes(chunk);
+        }
+        var webp = out.toByteArray();
+        writeIntLittleEndian(webp, 4, webp.length - 8);
+        return webp;
+    }
+
+    private static byte[] insert(byte[] bytes, int offset, byte[]... inserted) {
+        var out = new ByteArrayOutputStream();
+        out.write(bytes, 0, offset);
+        for (var part : inserted) {
+            out.writeBytes(part);
+        }
+        out.write(bytes, offset, bytes.length - offset);
+        return out.toByteArray();
+    }
+
+    private static long deadline() {
+        return System.nanoTime() + Duration.ofMinutes(1).toNanos();
+    }
+
+    private static int readIntBigEndian(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xFF) << 24 | (bytes[pos + 1] & 0xFF) << 16
+            | (bytes[pos + 2] & 0xFF) << 8 | (bytes[pos + 3] & 0xFF);
+    }
+
+    private static int readShortBigEndian(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xFF) << 8 | (bytes[pos + 1] & 0xFF);
+    }
+
+    private static void writeIntBigEndian(byte[] bytes, int pos, int value) {
+        bytes[pos] = (byte) (value >>> 24);
+        bytes[pos + 1] = (byte) (value >>> 16);
+        bytes[pos + 2] = (byte) (value >>> 8);
+        bytes[pos + 3] = (byte) value;
+    }
+
+    private static void writeIntLittleEndian(byte[] bytes, int pos, int value) {
+        bytes[pos] = (byte) value;
+        bytes[pos + 1] = (byte) (value >>> 8);
+        bytes[pos + 2] = (byte) (value >>> 16);
+        bytes[pos + 3] = (byte) (value >>> 24);
+    }
+}
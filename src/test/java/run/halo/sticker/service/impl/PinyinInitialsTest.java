@@ -0,0 +1,31 @@
+package run.halo.sticker.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class PinyinInitialsTest {
+
+    @Test
+    void convertsHanziToInitials() {
+        assertThat(PinyinInitials.of("开心")).isEqualTo("kx");
+        assertThat(PinyinInitials.of("世界")).isEqualTo("sj");
+    }
+
+    @Test
+    void coversFirstAndLastLevelOneCharacters() {
+        // the first and the last character of level 1
+        assertThat(PinyinInitials.of("啊座")).isEqualTo("az");
+    }
+
+    @Test
+    void keepsAsciiLettersAndDigitsInLowerCase() {
+        assertThat(PinyinInitials.of("OK 好的 2!")).isEqualTo("okhd2");
+    }
+
+    @Test
+    void dropsCharactersOutsideLevelOne() {
+        // 亍 is a level-2 hanzi, the others are not hanzi at all
+        assertThat(PinyinInitials.of("亍😀ü")).isEmpty();
+    }
+}
@@ -0,0 +1,56 @@
+package run.halo.sticker.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Arrays;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import run.halo.sticker.infra.StickerMetrics;
+
+class StickerImageOptimizerTest {
+
+    private static final Duration BUDGET = Duration.ofSeconds(5);
+
+    private final StickerMetrics metrics = new StickerMetrics();
+
+    private final StickerImageOptimizer optimizer = new StickerImageOptimizer(metrics);
+
+    @AfterEach
+    void tearDown() {
+        optimizer.destroy();
+        metrics.destroy();
+    }
+
+    @Test
+    void storesOriginalWhenRewriteFails() throws Exception {
+        var png = ImageRewriterTest.png();
+        var truncated = Arrays.copyOf(png, png.length - 6);
+
+        assertThat(optimizer.optimize(ImageType.PNG, truncated, BUDGET).blockOptional())
+            .isEmpty();
+    }
+
+    @Test
+    void storesOriginalWhenRewriteIsNotSmaller() throws Exception {
+        var gif = ImageRewriterTest.gif();
+
+        assertThat(optimizer.optimize(ImageType.GIF, gif, BUDGET).blockOptional()).isEmpty();
+    }
+
+    @Test
+    void storesRewriteWhenSmaller() throws Exception {
+        var gif = ImageRewriterTest.gif();
+        // a comment extension right before the trailer
+        var comment = new byte[] {0x21, (byte) 0xFE, 3, 'a', 'b', 'c', 0};
+        var withComment = new byte[gif.length + comment.length];
+        System.arraycopy(gif, 0, withComment, 0, gif.length - 1);
+        System.arraycopy(comment, 0, withComment, gif.length - 1, comment.length);
+        withComment[withComment.length - 1] = 0x3B;
+
+        var optimized = optimizer.optimize(ImageType.GIF, withComment, BUDGET).blockOptional();
+
+        assertThat(optimized).isPresent();
+        assertThat(optimized.get()).isEqualTo(gif);
+    }
+}
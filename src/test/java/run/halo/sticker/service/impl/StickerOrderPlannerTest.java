@@ -0,0 +1,107 @@
+package run.halo.sticker.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static run.halo.sticker.service.StickerOrderService.FIRST;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import run.halo.sticker.service.impl.StickerOrderPlanner.Position;
+
+class StickerOrderPlannerTest {
+
+    @Test
+    void placeAfterTakesMidpointOfGap() {
+        var planner = new StickerOrderPlanner();
+        planner.addSticker("a", "g", 1024);
+        planner.addSticker("b", "g", 2048);
+        planner.addSticker("c", "other", 1024);
+        planner.addOrdering("g", List.of("a", "b"));
+
+        planner.placeAfter("c", "g", "a");
+
+        assertThat(planner.changes()).containsExactly(
+            entry("c", new Position("g", 1536)));
+    }
+
+    @Test
+    void placeFirstAndLastStayWithinGaps() {
+        var planner = new StickerOrderPlanner();
+        planner.addSticker("a", "g", 1024);
+        planner.addSticker("b", "g", 2048);
+        planner.addSticker("c", "other", 1024);
+        planner.addSticker("d", "other", 2048);
+        planner.addOrdering("g", List.of("a", "b"));
+
+        planner.placeAfter("c", "g", FIRST);
+        planner.placeAfter("d", "g", "b");
+
+        assertThat(planner.changes()).containsExactly(
+            entry("c", new Position("g", 512)),
+            entry("d", new Position("g", 3072)));
+    }
+
+    @Test
+    void placeAfterRenumbersGroupWithoutGap() {
+        var planner = new StickerOrderPlanner();
+        planner.addSticker("a", "g", 1);
+        planner.addSticker("b", "g", 2);
+        planner.addSticker("c", "other", 1024);
+        planner.addOrdering("g", List.of("a", "b"));
+
+        planner.placeAfter("c", "g", "a");
+
+        assertThat(planner.changes()).containsOnly(
+            entry("a", new Position("g", 1024)),
+            entry("c", new Position("g", 2048)),
+            entry("b", new Position("g", 3072)));
+    }
+
+    @Test
+    void placeNextToUnsequencedStickerRenumbersGroup() {
+        var planner = new StickerOrderPlanner();
+        planner.addSticker("a", "g", null);
+        planner.addSticker("b", "g", 1024);
+        planner.addSticker("c", "other", 1024);
+        planner.addOrdering("g", List.of("a", "b"));
+
+        planner.placeAfter("c", "g", "a");
+
+        assertThat(planner.changes()).containsOnly(
+            entry("a", new Position("g", 1024)),
+            entry("c", new Position("g", 2048)),
+            entry("b", new Position("g", 3072)));
+    }
+
+    @Test
+    void rejectedMoveKeepsStickerInOrdering() {
+        var planner = new StickerOrderPlanner();
+        planner.addSticker("a", "g", 1024);
+        planner.addSticker("b", "g", 2048);
+        planner.addSticker("c", "g", 3072);
+        planner.addOrdering("g", List.of("a", "b", "c"));
+
+        assertThatThrownBy(() -> planner.placeAfter("c", "g", "missing"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> planner.placeAfter("c", "g", "c"))
+            .isInstanceOf(IllegalArgumentException.class);
+        // the rejected sticker is still there to be placed after
+        planner.placeAfter("a", "g", "c");
+
+        assertThat(planner.changes()).containsExactly(
+            entry("a", new Position("g", 4096)));
+    }
+
+    @Test
+    void unchangedPositionIsNotWritten() {
+        var planner = new StickerOrderPlanner();
+        planner.addSticker("a", "g", 1024);
+        planner.addSticker("b", "g", null);
+
+        planner.place("a", "g", 1024);
+        planner.place("b", "g", planner.currentPosition("b").sequence());
+
+        assertThat(planner.changes()).isEmpty();
+    }
+}
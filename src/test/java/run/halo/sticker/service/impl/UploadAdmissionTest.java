@@ -0,0 +1,116 @@
+package run.halo.sticker.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.UnsupportedMediaTypeStatusException;
+import reactor.core.publisher.Flux;
+import run.halo.sticker.infra.StickerMetrics;
+
+class UploadAdmissionTest {
+
+    private static final byte[] PNG_HEADER =
+        {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+
+    private final StickerMetrics metrics = new StickerMetrics();
+
+    @AfterEach
+    void tearDown() {
+        metrics.destroy();
+    }
+
+    @Test
+    void recognizesTypeFromHeaderSplitOverBuffers() {
+        var admission = new UploadAdmission(1024, metrics);
+        var buffers = new DataBuffer[PNG_HEADER.length + 1];
+        for (int i = 0; i < PNG_HEADER.length; i++) {
+            buffers[i] = buffer(new byte[] {PNG_HEADER[i]});
+        }
+        buffers[PNG_HEADER.length] = buffer(new byte[100]);
+
+        var count = StickerUploadServiceImpl.admissionCheck(Flux.just(buffers), admission)
+            .count()
+            .block();
+
+        assertThat(count).isEqualTo(buffers.length);
+        assertThat(admission.imageType()).isEqualTo(ImageType.PNG);
+        assertThat(admission.size()).isEqualTo(PNG_HEADER.length + 100);
+    }
+
+    @Test
+    void recognizesFileShorterThanSignatureLength() {
+        var admission = new UploadAdmission(1024, metrics);
+        var jpeg = buffer(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF});
+
+        StickerUploadServiceImpl.admissionCheck(Flux.just(jpeg), admission).blockLast();
+
+        assertThat(admission.imageType()).isEqualTo(ImageType.JPEG);
+    }
+
+    @Test
+    void rejectsUnknownTypeBeforeRestOfUpload() {
+        var admission = new UploadAdmission(1024, metrics);
+        var emitted = new AtomicInteger();
+        var content = Flux.just(buffer(new byte[8]), buffer(new byte[8]), buffer(new byte[8]))
+            .doOnNext(buffer -> emitted.incrementAndGet());
+
+        assertThatThrownBy(
+            () -> StickerUploadServiceImpl.admissionCheck(content, admission).blockLast())
+            .isInstanceOf(UnsupportedMediaTypeStatusException.class);
+        assertThat(emitted).hasValue(2);
+    }
+
+    @Test
+    void rejectsContentOverSizeLimit() {
+        var admission = new UploadAdmission(PNG_HEADER.length + 10, metrics);
+        var content = Flux.just(buffer(PNG_HEADER), buffer(new byte[10]), buffer(new byte[1]));
+
+        assertThatThrownBy(
+            () -> StickerUploadServiceImpl.admissionCheck(content, admission).blockLast())
+            .isInstanceOfSatisfying(ResponseStatusException.class, e ->
+                assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+    }
+
+    @Test
+    void rejectsDeclaredSizeOverLimit() {
+        var admission = new UploadAdmission(1024, metrics);
+
+        admission.checkDeclaredSize(-1);
+        admission.checkDeclaredSize(1024);
+        assertThatThrownBy(() -> admission.checkDeclaredSize(1025))
+            .isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    void sniffsEveryAcceptedType() {
+        assertThat(sniff(PNG_HEADER)).isEqualTo(ImageType.PNG);
+        assertThat(sniff(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0}))
+            .isEqualTo(ImageType.JPEG);
+        assertThat(sniff("GIF87a".getBytes())).isEqualTo(ImageType.GIF);
+        assertThat(sniff("GIF89a".getBytes())).isEqualTo(ImageType.GIF);
+        assertThat(sniff("RIFF\0\0\0\0WEBP".getBytes())).isEqualTo(ImageType.WEBP);
+    }
+
+    @Test
+    void sniffsNothingFromOtherContent() {
+        assertThat(ImageType.sniff("RIFF\0\0\0\0WAVE".getBytes(), 12)).isEmpty();
+        assertThat(ImageType.sniff("RIFF\0\0\0\0WEB".getBytes(), 11)).isEmpty();
+        assertThat(ImageType.sniff("<svg></svg>".getBytes(), 11)).isEmpty();
+        assertThat(ImageType.sniff(PNG_HEADER, 4)).isEmpty();
+    }
+
+    private static ImageType sniff(byte[] header) {
+        return ImageType.sniff(header, header.length).orElseThrow();
+    }
+
+    private static DataBuffer buffer(byte[] bytes) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+}
@@ -27,10 +27,15 @@ export interface StickerSpec {
   description?: string;
   url?: string;
   sequence?: number;
+  contentHash?: string;
+  shortcode?: string;
 }
 
 export interface StickerStatus {
   isDelete?: boolean;
+  attachmentName?: string;
+  attachmentVersion?: number;
+  thumbUrl?: string;
 }
 
 export interface StickerGroup {
@@ -56,6 +61,15 @@ export interface StickerGroupStatus {
   isDelete?: boolean;
 }
 
+export interface StickerManifest {
+  groups: Array<StickerManifestGroup>;
+}
+
+export interface StickerManifestGroup {
+  group: StickerGroup;
+  stickers: Array<Sticker>;
+}
+
 export interface Page<T> {
   page: number;
   size: number;
@@ -66,3 +80,29 @@ export interface Page<T> {
   hasNext: boolean;
   hasPrevious: boolean;
 }
+
+export interface StickerSpriteTile {
+  x: number;
+  y: number;
+  width: number;
+  height: number;
+}
+
+export interface StickerSpriteSheet {
+  hash: string;
+  imageUrl?: string;
+  width: number;
+  height: number;
+  tiles: Record<string, StickerSpriteTile>;
+}
+
+export interface StickerUsageEntry {
+  stickerName: string;
+  count: number;
+  lastUsedAt?: string;
+}
+
+export interface StickerUsageSummary {
+  recent: Array<StickerUsageEntry>;
+  frequent: Array<StickerUsageEntry>;
+}